@@ -0,0 +1,45 @@
+package com.laamella.bitmask;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating bitmasks from images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmaskFactoryBenchmark {
+    @Param({"16", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"TYPE_INT_ARGB", "TYPE_4BYTE_ABGR"})
+    public String imageType;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        image = new BufferedImage(size, size, BufferedImage.class.getField(imageType).getInt(null));
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillOval(0, 0, size, size);
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public Bitmask createBitmaskFromAlphaChannel() {
+        return BitmaskFactory.createBitmaskFromAlphaChannel(image, 0.5);
+    }
+
+    @Benchmark
+    public Bitmask createBitmaskFromColorKey() {
+        return BitmaskFactory.createBitmaskFromColorKey(image, Color.RED);
+    }
+}
@@ -0,0 +1,82 @@
+package com.laamella.bitmask;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.laamella.bitmask.Tools.makeOnOffPatternBitmask;
+
+/**
+ * Measures stamping sprites of various sizes into a large terrain mask, and
+ * scaling, rotating and convolving them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmaskModifierBenchmark {
+    private static final int TERRAIN_SIZE = 4096;
+
+    @Param({"16", "64", "256", "1024", "4096"})
+    public int size;
+
+    private Bitmask terrain;
+    private Bitmask sprite;
+    private Bitmask unit;
+    private int xOffset;
+    private int yOffset;
+
+    @Setup
+    public void setUp() {
+        terrain = makeOnOffPatternBitmask(TERRAIN_SIZE, TERRAIN_SIZE);
+        sprite = makeOnOffPatternBitmask(size, size);
+        unit = new Bitmask(16, 16);
+        unit.fill();
+        // Unaligned, and partly sticking out of the terrain when the sprite is large.
+        xOffset = (TERRAIN_SIZE - size) / 2 + 3;
+        yOffset = (TERRAIN_SIZE - size) / 2 + 1;
+    }
+
+    @Benchmark
+    public Bitmask draw() {
+        BitmaskModifier.draw(terrain, sprite, xOffset, yOffset);
+        return terrain;
+    }
+
+    @Benchmark
+    public Bitmask erase() {
+        BitmaskModifier.erase(terrain, sprite, xOffset, yOffset);
+        return terrain;
+    }
+
+    @Benchmark
+    public Bitmask scaleUp() {
+        return BitmaskModifier.scale(sprite, size * 2, size * 2);
+    }
+
+    @Benchmark
+    public Bitmask scaleDown() {
+        return BitmaskModifier.scale(sprite, size / 2, size / 2);
+    }
+
+    /** Not a factor of 2, so every pixel looks up its source column. */
+    @Benchmark
+    public Bitmask scaleUneven() {
+        return BitmaskModifier.scale(sprite, size * 3 / 2, size * 3 / 2);
+    }
+
+    /** The places a solid 16x16 unit can't stand on the sprite. */
+    @Benchmark
+    public Bitmask convolve() {
+        final Bitmask map = new Bitmask(size + 15, size + 15);
+        BitmaskModifier.convolve(sprite, unit, map, 0, 0);
+        return map;
+    }
+
+    @Benchmark
+    public Bitmask rotate() {
+        return BitmaskModifier.rotate(sprite, 0.5);
+    }
+}
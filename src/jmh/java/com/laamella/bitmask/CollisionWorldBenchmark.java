@@ -0,0 +1,51 @@
+package com.laamella.bitmask;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a tick of a world full of moving 16x16 sprites: moving every body
+ * and then finding all collisions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionWorldBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int bodies;
+
+    private CollisionWorld world;
+    private int[] dxs;
+    private int[] dys;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        // Keep the density the same for every amount of bodies.
+        final int worldSize = (int) Math.sqrt(bodies * 16 * 16 * 8.0);
+        world = new CollisionWorld(32);
+        dxs = new int[bodies];
+        dys = new int[bodies];
+        for (int i = 0; i < bodies; i++) {
+            world.add(Tools.makeRandomBitmask(16, 16, i), random.nextInt(worldSize), random.nextInt(worldSize));
+            dxs[i] = random.nextInt(5) - 2;
+            dys[i] = random.nextInt(5) - 2;
+        }
+    }
+
+    @Benchmark
+    public void tick(final Blackhole blackhole) {
+        for (int body = 0; body < bodies; body++) {
+            world.move(body, world.getX(body) + dxs[body], world.getY(body) + dys[body]);
+            dxs[body] = -dxs[body];
+            dys[body] = -dys[body];
+        }
+        world.findCollisions((a, b) -> blackhole.consume(a));
+    }
+}
@@ -0,0 +1,103 @@
+package com.laamella.bitmask;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.laamella.bitmask.Tools.makeOnOffPatternBitmask;
+
+/**
+ * Measures every code path of {@link Bitmask#overlaps(Bitmask, int, int)},
+ * {@link Bitmask#overlapArea(Bitmask, int, int)} and
+ * {@link Bitmask#overlapPos(Bitmask, int, int)}.
+ * <p>
+ * The masks are a checkerboard and its inverse, and all offsets are even,
+ * so no path can exit early: every benchmark walks the full overlapping area.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapsBenchmark {
+    public enum Path {
+        /** xOffset is a multiple of the stripe width. */
+        ALIGNED,
+        /** b ends before the last stripe of a. */
+        ZIG_ZAG,
+        /** b sticks out of the last stripe of a. */
+        ZIG_ZAG_ZIG,
+        /** Negative offsets, which swap a and b. */
+        NEGATIVE_OFFSET,
+        /** The bounding rectangles don't overlap. */
+        BOUNDING_RECTANGLE_REJECT
+    }
+
+    @Param({"16", "64", "256", "1024", "4096"})
+    public int size;
+
+    @Param
+    public Path path;
+
+    private Bitmask a;
+    private Bitmask b;
+    private ShiftedBitmaskCache shiftedB;
+    private int xOffset;
+    private int yOffset;
+
+    @Setup
+    public void setUp() {
+        b = makeOnOffPatternBitmask(size, size);
+        b.invert();
+        shiftedB = new ShiftedBitmaskCache(b);
+        switch (path) {
+            case ALIGNED -> {
+                a = makeOnOffPatternBitmask(size + 64, size);
+                xOffset = 64;
+                yOffset = 2;
+            }
+            case ZIG_ZAG -> {
+                a = makeOnOffPatternBitmask(size + 128, size);
+                xOffset = 2;
+                yOffset = 2;
+            }
+            case ZIG_ZAG_ZIG -> {
+                a = makeOnOffPatternBitmask(size, size);
+                xOffset = 2;
+                yOffset = 2;
+            }
+            case NEGATIVE_OFFSET -> {
+                a = makeOnOffPatternBitmask(size, size);
+                xOffset = -2;
+                yOffset = -2;
+            }
+            case BOUNDING_RECTANGLE_REJECT -> {
+                a = makeOnOffPatternBitmask(size, size);
+                xOffset = size;
+                yOffset = 0;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean overlaps() {
+        return a.overlaps(b, xOffset, yOffset);
+    }
+
+    @Benchmark
+    public int overlapArea() {
+        return a.overlapArea(b, xOffset, yOffset);
+    }
+
+    @Benchmark
+    public long overlapPos() {
+        return a.overlapPos(b, xOffset, yOffset);
+    }
+
+    /** Like overlaps, but through a {@link ShiftedBitmaskCache}, so every path is aligned. */
+    @Benchmark
+    public boolean cachedOverlaps() {
+        return shiftedB.overlaps(a, xOffset, yOffset);
+    }
+}
@@ -0,0 +1,55 @@
+package com.laamella.bitmask;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Bitmask#sweep(Bitmask, int, int, int, int)} with calling
+ * {@link Bitmask#overlaps(Bitmask, int, int)} for every step of the same path.
+ * A solid bullet flies diagonally down into the ground of a 1024x512 world.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SweepBenchmark {
+    @Param({"4", "16", "48"})
+    public int bulletSize;
+
+    private Bitmask terrain;
+    private Bitmask bullet;
+    private final int x = 100;
+    private final int y = 10;
+    private final int dx = 300;
+    private final int dy = 400;
+
+    @Setup
+    public void setUp() {
+        terrain = new Bitmask(1024, 512);
+        for (int x = 0; x < 1024; x++) {
+            for (int y = 300; y < 512; y++) {
+                terrain.setBit(x, y);
+            }
+        }
+        bullet = new Bitmask(bulletSize, bulletSize);
+        bullet.fill();
+    }
+
+    @Benchmark
+    public int sweep() {
+        return terrain.sweep(bullet, x, y, dx, dy);
+    }
+
+    @Benchmark
+    public int steppedOverlaps() {
+        for (int step = 0; step <= dx + dy; step++) {
+            if (terrain.overlaps(bullet, x + Bitmask.sweepX(step, dx, dy), y + Bitmask.sweepY(step, dx, dy))) {
+                return step;
+            }
+        }
+        return Bitmask.NO_CONTACT;
+    }
+}
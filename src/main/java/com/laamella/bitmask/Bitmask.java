@@ -20,6 +20,7 @@
  */
 package com.laamella.bitmask;
 
+import java.awt.Rectangle;
 import java.io.Serializable;
 import java.util.Arrays;
 
@@ -48,9 +49,96 @@ public final class Bitmask implements Serializable {
 			0x800000000000000L, 0x1000000000000000L, 0x2000000000000000L, 0x4000000000000000L, 0x8000000000000000L };
 	private static final long ALL_BITS_SET = ~0L;
 
+	// Operations for combine()
+	static final int OR = 0;
+	static final int AND_NOT = 1;
+	static final int XOR = 2;
+	static final int AND = 3;
+
+	/**
+	 * Whether the row loops can use {@link VectorKernels}. This needs the
+	 * jdk.incubator.vector module, so run with --add-modules
+	 * jdk.incubator.vector to enable it. Set the system property
+	 * com.laamella.bitmask.vector to false to disable it.
+	 */
+	static final boolean VECTORIZED = vectorKernelsAvailable();
+	// Shorter runs of rows are faster without vectors.
+	private static final int VECTOR_MIN_ROWS = 16;
+	// Lower masks are scanned faster than their summary.
+	private static final int OCCUPANCY_MIN_ROWS = 64;
+
+	/** Returned by {@link #overlapPos(Bitmask, int, int)} when there is no overlap. */
+	public static final long NO_OVERLAP = -1;
+
+	/** Returned by {@link #sweep(Bitmask, int, int, int, int)} when nothing is hit. */
+	public static final int NO_CONTACT = -1;
+
 	private final int w, h;
 	// Storage is column by column.
-	private final long[] bits;
+	private final BitmaskStorage bits;
+	/*
+	 * A rectangle that contains all set bits, or null when it has to be
+	 * computed again. Operations that can only remove bits leave it alone, so
+	 * it is not always tight.
+	 */
+	private transient Bounds bounds;
+	/*
+	 * Which bands of rows may contain set bits, or null when it has not been
+	 * built. Only masks of at least OCCUPANCY_MIN_ROWS rows get one.
+	 */
+	private transient Occupancy occupancy;
+	// Set by freeze(). Frozen masks can't change anymore.
+	private boolean frozen;
+
+	/**
+	 * Bounds of set bits, inclusive. minX > maxX when there are no set bits.
+	 * Exact bounds are tight around the set bits.
+	 */
+	private record Bounds(int minX, int minY, int maxX, int maxY, boolean exact) {
+		static final Bounds EMPTY = new Bounds(0, 0, -1, -1, true);
+
+		boolean isEmpty() {
+			return minX > maxX;
+		}
+
+		Bounds loose() {
+			return exact ? new Bounds(minX, minY, maxX, maxY, false) : this;
+		}
+
+		boolean contains(final int x, final int y) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY;
+		}
+
+		Bounds union(final Bounds other, final int xoffset, final int yoffset, final int w, final int h) {
+			if (other.isEmpty()) {
+				return this;
+			}
+			final int otherMinX = Math.max(other.minX + xoffset, 0);
+			final int otherMinY = Math.max(other.minY + yoffset, 0);
+			final int otherMaxX = Math.min(other.maxX + xoffset, w - 1);
+			final int otherMaxY = Math.min(other.maxY + yoffset, h - 1);
+			if (otherMinX > otherMaxX || otherMinY > otherMaxY) {
+				return this;
+			}
+			if (isEmpty()) {
+				return new Bounds(otherMinX, otherMinY, otherMaxX, otherMaxY, false);
+			}
+			return new Bounds(Math.min(minX, otherMinX), Math.min(minY, otherMinY), Math.max(maxX, otherMaxX),
+					Math.max(maxY, otherMaxY), false);
+		}
+	}
+
+	private static boolean vectorKernelsAvailable() {
+		if (!Boolean.parseBoolean(System.getProperty("com.laamella.bitmask.vector", "true"))
+				|| ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return false;
+		}
+		try {
+			return VectorKernels.lanes() > 1;
+		} catch (final LinkageError e) {
+			return false;
+		}
+	}
 
 	/**
 	 * Creates a Bitmask of width w and height h, where w and h must both be
@@ -59,14 +147,82 @@ public final class Bitmask implements Serializable {
 	public Bitmask(final int w, final int h) {
 		this.w = w;
 		this.h = h;
-		bits = new long[(int) (h * ((w - 1) / BITMASK_W_LEN + 1))];
+		final long words = sizeInWords(w, h);
+		if (words > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("A " + w + "x" + h + " mask is too large, use a TiledBitmask");
+		}
+		bits = new HeapStorage((int) words);
 		clear();
 	}
 
+	/**
+	 * Creates a Bitmask on existing storage, which must hold
+	 * {@link #sizeInWords(int, int)} words.
+	 */
+	Bitmask(final int w, final int h, final BitmaskStorage bits) {
+		this.w = w;
+		this.h = h;
+		this.bits = bits;
+		this.bounds = null;
+	}
+
+	/**
+	 * Creates a copy of bitmask. The copy is always stored on the heap, and is
+	 * never frozen.
+	 */
 	public Bitmask(final Bitmask bitmask) {
 		this.w = bitmask.w;
 		this.h = bitmask.h;
-		this.bits = Arrays.copyOf(bitmask.bits, bitmask.bits.length);
+		if (bitmask.bits instanceof HeapStorage heap) {
+			this.bits = new HeapStorage(Arrays.copyOf(heap.words, heap.words.length));
+		} else {
+			this.bits = new HeapStorage(bitmask.bits.size());
+			for (int i = 0; i < bits.size(); i++) {
+				bits.set(i, bitmask.bits.get(i));
+			}
+		}
+		this.bounds = bitmask.bounds;
+	}
+
+	/**
+	 * Makes this mask read only. Every method that would change it throws an
+	 * UnsupportedOperationException from now on, so it can be shared between
+	 * threads without locking, as long as it is handed over safely, like
+	 * through a volatile field. Use {@link #Bitmask(Bitmask)} to get a copy that
+	 * can be changed again.
+	 * 
+	 * @return this mask.
+	 */
+	public Bitmask freeze() {
+		// Fill the caches now, so readers only ever read them. Loose bounds
+		// would be tightened by getTightBounds, so make them exact here.
+		if (!bounds().exact()) {
+			bounds = computeBounds();
+		}
+		occupancy();
+		frozen = true;
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("This mask is frozen");
+		}
+	}
+
+	/**
+	 * @return the amount of longs needed to store a w x h mask.
+	 */
+	static long sizeInWords(final int w, final int h) {
+		return (long) h * ((w - 1) / BITMASK_W_LEN + 1);
+	}
+
+	BitmaskStorage storage() {
+		return bits;
 	}
 
 	public int getWidth() {
@@ -79,20 +235,26 @@ public final class Bitmask implements Serializable {
 
 	/** Clears all bits in the mask */
 	public void clear() {
-		Arrays.fill(bits, 0);
+		checkNotFrozen();
+		bits.fill(0, bits.size(), 0);
+		bounds = Bounds.EMPTY;
+		if (occupancy != null) {
+			occupancy.clear();
+		}
 	}
 
 	/** Sets all bits in the mask */
 	public void fill() {
+		checkNotFrozen();
 		final long len = sizeInLongs(w - 1, h);
 		final long shift = BITMASK_W_LEN - (w % BITMASK_W_LEN);
 		final long cmask = ALL_BITS_SET >>> shift;
 
-		for (int pixel = 0; pixel < len; pixel++) {
-			bits[pixel] = ALL_BITS_SET;
-		}
-		for (int pixel = (int) len; pixel < len + h; pixel++) {
-			bits[pixel] = cmask;
+		bits.fill(0, (int) len, ALL_BITS_SET);
+		bits.fill((int) len, (int) len + h, cmask);
+		bounds = new Bounds(0, 0, w - 1, h - 1, true);
+		if (occupancy != null) {
+			occupancy.fill();
 		}
 	}
 
@@ -102,23 +264,26 @@ public final class Bitmask implements Serializable {
 
 	/** Flips all bits in the mask */
 	public void invert() {
+		checkNotFrozen();
 		final long len = sizeInLongs(w - 1, h);
 		final long shift = BITMASK_W_LEN - (w % BITMASK_W_LEN);
 		final long cmask = ALL_BITS_SET >>> shift;
 
 		for (int pixel = 0; pixel < len; pixel++) {
-			bits[pixel] = ~bits[pixel];
+			bits.set(pixel, ~bits.get(pixel));
 		}
 		for (int pixel = (int) len; pixel < len + h; pixel++) {
-			bits[pixel] = cmask & ~bits[pixel];
+			bits.set(pixel, cmask & ~bits.get(pixel));
 		}
+		bounds = null;
+		occupancy = null;
 	}
 
 	/** Counts the bits in the mask */
 	public int countBits() {
 		int total = 0;
 		for (long pixel = 0; pixel < (h * ((w - 1) / BITMASK_W_LEN + 1)); pixel++) {
-			total += Long.bitCount(bits[(int) pixel]);
+			total += Long.bitCount(bits.get((int) pixel));
 
 		}
 		return total;
@@ -128,21 +293,164 @@ public final class Bitmask implements Serializable {
 	 * @return true if the bit at (x,y) is set. Coordinates start at (0,0)
 	 */
 	public boolean getBit(final int x, final int y) {
-		return (bits[(int) (x / BITMASK_W_LEN * h + y)] & BITMASK_N[(int) (x & BITMASK_W_MASK)]) != 0;
+		return (bits.get((int) (x / BITMASK_W_LEN * h + y)) & BITMASK_N[(int) (x & BITMASK_W_MASK)]) != 0;
 	}
 	
 	/**
 	 * Sets the bit at (x,y)
 	 */
 	public void setBit(final int x, final int y) {
-		bits[(int) (x / BITMASK_W_LEN * h + y)] |= BITMASK_N[(int) (x & BITMASK_W_MASK)];
+		checkNotFrozen();
+		final int index = (int) (x / BITMASK_W_LEN * h + y);
+		bits.set(index, bits.get(index) | BITMASK_N[(int) (x & BITMASK_W_MASK)]);
+		final Bounds currentBounds = bounds;
+		if (currentBounds != null && !currentBounds.contains(x, y)) {
+			bounds = null;
+		}
+		if (occupancy != null) {
+			occupancy.mark((int) (x / BITMASK_W_LEN), y, y);
+		}
 	}
 
 	/**
 	 * Clears the bit at (x,y)
 	 */
 	public void clearBit(final int x, final int y) {
-		bits[(int) (x / BITMASK_W_LEN * h + y)] &= ~BITMASK_N[(int) (x & BITMASK_W_MASK)];
+		checkNotFrozen();
+		final int index = (int) (x / BITMASK_W_LEN * h + y);
+		bits.set(index, bits.get(index) & ~BITMASK_N[(int) (x & BITMASK_W_MASK)]);
+		final Bounds currentBounds = bounds;
+		if (currentBounds != null) {
+			bounds = currentBounds.loose();
+		}
+	}
+
+	/**
+	 * Sets the bit at (x,y), atomically. Threads may set and clear bits of the
+	 * same mask at the same time with the atomic methods without losing each
+	 * other's bits. Query the mask only after all writing threads are done,
+	 * like after joining them.
+	 */
+	public void setBitAtomic(final int x, final int y) {
+		checkNotFrozen();
+		bits.orAtomic((int) (x / BITMASK_W_LEN * h + y), BITMASK_N[(int) (x & BITMASK_W_MASK)]);
+		forgetSummariesAtomic(true);
+	}
+
+	/**
+	 * Clears the bit at (x,y), atomically. See {@link #setBitAtomic(int, int)}.
+	 */
+	public void clearBitAtomic(final int x, final int y) {
+		checkNotFrozen();
+		bits.andNotAtomic((int) (x / BITMASK_W_LEN * h + y), BITMASK_N[(int) (x & BITMASK_W_MASK)]);
+		forgetSummariesAtomic(false);
+	}
+
+	/*
+	 * The atomic writers only ever drop the summaries, so threads that race on
+	 * them can't leave a stale one behind. Fields are read first so threads
+	 * don't fight over writing the same cache line.
+	 */
+	private void forgetSummariesAtomic(final boolean bitsSet) {
+		final Bounds currentBounds = bounds;
+		if (currentBounds != null && (bitsSet || currentBounds.exact())) {
+			bounds = null;
+		}
+		if (bitsSet && occupancy != null) {
+			occupancy = null;
+		}
+	}
+
+	/**
+	 * @return the 64 bits of row y in a stripe. Bit n is pixel (stripe * 64 +
+	 *         n, y).
+	 */
+	long getWord(final int stripe, final int y) {
+		return bits.get(stripe * h + y);
+	}
+
+	/**
+	 * Sets the 64 bits of row y in a stripe at once. Bit n of word is pixel
+	 * (stripe * 64 + n, y). Bits outside the mask must be zero. Like the atomic
+	 * writers, this reads the summaries before dropping them, because the
+	 * factory calls it from many threads at once.
+	 */
+	void setWord(final int stripe, final int y, final long word) {
+		checkNotFrozen();
+		bits.set(stripe * h + y, word);
+		if (bounds != null) {
+			bounds = null;
+		}
+		if (occupancy != null) {
+			occupancy = null;
+		}
+	}
+
+	/**
+	 * @return the occupancy summary, building it if needed, or null for masks
+	 *         that are too low to need one.
+	 */
+	private Occupancy occupancy() {
+		final Occupancy currentOccupancy = occupancy;
+		if (currentOccupancy != null || h < OCCUPANCY_MIN_ROWS) {
+			return currentOccupancy;
+		}
+		return occupancy = new Occupancy(bits, (w - 1) / (int) BITMASK_W_LEN + 1, h);
+	}
+
+	/**
+	 * @return bounds that contain all set bits, computing them if needed.
+	 */
+	private Bounds bounds() {
+		final Bounds currentBounds = bounds;
+		if (currentBounds != null) {
+			return currentBounds;
+		}
+		return bounds = computeBounds();
+	}
+
+	private Bounds computeBounds() {
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = -1;
+		int maxY = -1;
+		final int stripes = (w - 1) / (int) BITMASK_W_LEN + 1;
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			long column = 0;
+			for (int y = 0, index = stripe * h; y < h; y++, index++) {
+				final long word = bits.get(index);
+				if (word != 0) {
+					column |= word;
+					minY = Math.min(minY, y);
+					maxY = Math.max(maxY, y);
+				}
+			}
+			if (column != 0) {
+				minX = Math.min(minX, stripe * (int) BITMASK_W_LEN + Long.numberOfTrailingZeros(column));
+				maxX = stripe * (int) BITMASK_W_LEN + (int) BITMASK_W_MASK - Long.numberOfLeadingZeros(column);
+			}
+		}
+		if (maxX < 0) {
+			return Bounds.EMPTY;
+		}
+		return new Bounds(minX, minY, maxX, maxY, true);
+	}
+
+	/**
+	 * @return the smallest rectangle that contains all set bits, or an empty
+	 *         rectangle at (0,0) when no bits are set. The result is cached
+	 *         until the mask changes.
+	 */
+	public Rectangle getTightBounds() {
+		Bounds tight = bounds();
+		if (!tight.exact()) {
+			tight = bounds = computeBounds();
+		}
+		if (tight.isEmpty()) {
+			return new Rectangle();
+		}
+		return new Rectangle(tight.minX(), tight.minY(), tight.maxX() - tight.minX() + 1,
+				tight.maxY() - tight.minY() + 1);
 	}
 
 	/**
@@ -182,462 +490,879 @@ public final class Bitmask implements Serializable {
 			return false;
 		}
 
-		while (true) {
-			if (xoffset >= 0) {
+		if (xoffset < 0) {
+			final Bitmask c = a;
+			a = b;
+			b = c;
+			xoffset *= -1;
+			yoffset *= -1;
+		}
 
-				long a_entry;
-				long a_end;
-				long b_entry;
+		// Only the intersection of the bounds of the set bits can overlap.
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		final int left = Math.max(abounds.minX(), bbounds.minX() + xoffset);
+		final int right = Math.min(abounds.maxX(), bbounds.maxX() + xoffset);
+		final int top = Math.max(abounds.minY(), bbounds.minY() + yoffset);
+		final int bottom = Math.min(abounds.maxY(), bbounds.maxY() + yoffset);
+		if (left > right || top > bottom) {
+			return false;
+		}
 
-				if (yoffset >= 0) {
-					a_entry = a.h * (xoffset / BITMASK_W_LEN) + yoffset;
-					a_end = a_entry + Math.min(b.h, a.h - yoffset);
-					b_entry = 0;
-				} else {
-					a_entry = a.h * (xoffset / BITMASK_W_LEN);
-					a_end = a_entry + Math.min(b.h + yoffset, a.h);
-					b_entry = -yoffset;
+		final Occupancy aoccupancy = a.occupancy();
+		final Occupancy boccupancy = b.occupancy();
+		final int astripes = (a.w - 1) / (int) BITMASK_W_LEN + 1;
+		final int base = xoffset / (int) BITMASK_W_LEN;
+		final int shift = xoffset & (int) BITMASK_W_MASK;
+		final int lastStripe = (right - xoffset) / (int) BITMASK_W_LEN;
+		for (int stripe = (left - xoffset) / (int) BITMASK_W_LEN; stripe <= lastStripe; stripe++) {
+			final int astripe = base + stripe;
+			final boolean next = shift != 0 && astripe + 1 < astripes;
+			for (int y = top; y <= bottom;) {
+				final long run = nextRun(aoccupancy, astripe, next, boccupancy, stripe, y, bottom, yoffset);
+				if (run == NO_OVERLAP) {
+					break;
 				}
-				long shift;
-				shift = xoffset & BITMASK_W_MASK;
-				if (shift != 0) {
-
-					final long rshift = BITMASK_W_LEN - shift;
-					final long astripes = ((a.w - 1)) / BITMASK_W_LEN - xoffset / BITMASK_W_LEN;
-					final long bstripes = ((b.w - 1)) / BITMASK_W_LEN + 1;
-
-					if (bstripes > astripes) { /* zig-zag .. zig */
-						for (long i = 0; i < astripes; i++) {
-							for (long ap = a_entry, app = ap + a.h, bp = b_entry; ap < a_end;) {
-								if (((a.bits[(int) ap++] >>> shift) & b.bits[(int) bp]) != 0
-										|| ((a.bits[(int) app++] << rshift) & b.bits[(int) bp++]) != 0) {
-									return true;
-								}
-							}
-							a_entry += a.h;
-							a_end += a.h;
-							b_entry += b.h;
-						}
-						for (long ap = a_entry, bp = b_entry; ap < a_end;) {
-							if (((a.bits[(int) ap++] >>> shift) & b.bits[(int) bp++]) != 0) {
-								return true;
-							}
-						}
-						return false;
+				final int start = overlapPosX(run);
+				final int rows = overlapPosY(run) - start + 1;
+				final int ap = astripe * a.h + start;
+				final int bp = stripe * b.h + start - yoffset;
+				if (shift == 0) {
+					if (overlapsRows(a.bits, ap, b.bits, bp, rows)) {
+						return true;
 					}
-					// zig-zag
-					for (long i = 0; i < bstripes; i++) {
-						for (long ap = a_entry, app = ap + a.h, bp = b_entry; ap < a_end;) {
-							if (((a.bits[(int) ap++] >>> shift) & b.bits[(int) bp]) != 0
-									|| ((a.bits[(int) app++] << rshift) & b.bits[(int) bp++]) != 0) {
-								return true;
-							}
-						}
-						a_entry += a.h;
-						a_end += a.h;
-						b_entry += b.h;
+				} else if (next) {
+					if (overlapsRows(a.bits, ap, ap + a.h, b.bits, bp, rows, shift, ALL_BITS_SET)) {
+						return true;
 					}
-					return false;
+				} else if (overlapsRows(a.bits, ap, ap, b.bits, bp, rows, shift, 0)) { /* zig-zag .. zig */
+					return true;
+				}
+				y = start + rows;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Like {@link #overlaps(Bitmask, int, int)}, but will also give a point of
+	 * intersection. The point is given in the coordinates of this mask, packed
+	 * into a long so no object has to be allocated. Unpack it with
+	 * {@link #overlapPosX(long)} and {@link #overlapPosY(long)}.
+	 * 
+	 * @return the first overlapping pixel found, or {@link #NO_OVERLAP}.
+	 */
+	public long overlapPos(final Bitmask b, final int xoffset, final int yoffset) {
+		final Bitmask a = this;
+
+		if (!overlapsBoundingRectangleOf(b, xoffset, yoffset)) {
+			return NO_OVERLAP;
+		}
+
+		if (xoffset < 0) {
+			final long pos = b.overlapPos(a, -xoffset, -yoffset);
+			if (pos == NO_OVERLAP) {
+				return NO_OVERLAP;
+			}
+			return packPos(overlapPosX(pos) + xoffset, overlapPosY(pos) + yoffset);
+		}
+
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		final int left = Math.max(abounds.minX(), bbounds.minX() + xoffset);
+		final int right = Math.min(abounds.maxX(), bbounds.maxX() + xoffset);
+		final int top = Math.max(abounds.minY(), bbounds.minY() + yoffset);
+		final int bottom = Math.min(abounds.maxY(), bbounds.maxY() + yoffset);
+		if (left > right || top > bottom) {
+			return NO_OVERLAP;
+		}
+
+		final Occupancy aoccupancy = a.occupancy();
+		final Occupancy boccupancy = b.occupancy();
+		final int astripes = (a.w - 1) / (int) BITMASK_W_LEN + 1;
+		final int base = xoffset / (int) BITMASK_W_LEN;
+		final int shift = xoffset & (int) BITMASK_W_MASK;
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		final int lastStripe = (right - xoffset) / (int) BITMASK_W_LEN;
+		for (int stripe = (left - xoffset) / (int) BITMASK_W_LEN; stripe <= lastStripe; stripe++) {
+			final int astripe = base + stripe;
+			// With shift 0 the next stripe is not needed (and a shift by 64 would not clear it).
+			final boolean next = shift != 0 && astripe + 1 < astripes;
+			final int ap = astripe * a.h;
+			final int app = next ? ap + a.h : ap;
+			final int bp = stripe * b.h - yoffset;
+			final long himask = next ? ALL_BITS_SET : 0;
+			for (int y = top; y <= bottom;) {
+				final long run = nextRun(aoccupancy, astripe, next, boccupancy, stripe, y, bottom, yoffset);
+				if (run == NO_OVERLAP) {
+					break;
 				}
-				// xoffset is a multiple of the stripe width, and the above routines wont work 
-				final long astripes = (Math.min(b.w, a.w - xoffset) - 1) / BITMASK_W_LEN + 1;
-				for (long i = 0; i < astripes; i++) {
-					for (long ap = a_entry, bp = b_entry; ap < a_end;) {
-						if ((a.bits[(int) ap++] & b.bits[(int) bp++]) != 0) {
-							return true;
-						}
+				final int end = overlapPosY(run);
+				for (int row = overlapPosX(run); row <= end; row++) {
+					final long overlap = ((a.bits.get(ap + row) >>> shift) | (a.bits.get(app + row) << rshift & himask))
+							& b.bits.get(bp + row);
+					if (overlap != 0) {
+						return packPos(xoffset + (long) stripe * BITMASK_W_LEN + Long.numberOfTrailingZeros(overlap),
+								row);
 					}
-					a_entry += a.h;
-					a_end += a.h;
-					b_entry += b.h;
 				}
-				return false;
+				y = end + 1;
+			}
+		}
+		return NO_OVERLAP;
+	}
+
+	private static long packPos(final long x, final long y) {
+		return x << 32 | y;
+	}
+
+	/**
+	 * @return the x coordinate of a point returned by
+	 *         {@link #overlapPos(Bitmask, int, int)}.
+	 */
+	public static int overlapPosX(final long pos) {
+		return (int) (pos >>> 32);
+	}
+
+	/**
+	 * @return the y coordinate of a point returned by
+	 *         {@link #overlapPos(Bitmask, int, int)}.
+	 */
+	public static int overlapPosY(final long pos) {
+		return (int) pos;
+	}
+
+	/**
+	 * Moves mask b from (xoffset,yoffset) by (dx,dy), one pixel at a time, and
+	 * finds the first step where it overlaps this mask. The path is a
+	 * staircase of single pixel steps, so b can't jump over a wall of one
+	 * pixel thick. Step k puts b at (xoffset + {@link #sweepX(int, int, int)},
+	 * yoffset + {@link #sweepY(int, int, int)}). The time of impact, as a part
+	 * of the whole move, is step / (|dx| + |dy|).
+	 * <p>
+	 * Steps where the bounds of b are outside the bounds of this mask are
+	 * skipped without looking at the words. After a step that was tested, the
+	 * next step only tests the bits of b that land on pixels that were not
+	 * under b in the step before: the leading edge of b. Steps in y reuse the
+	 * words of b as they were shifted for the current x.
+	 * 
+	 * @return the first step where b overlaps, 0 when it already overlaps at
+	 *         the start, or {@link #NO_CONTACT}.
+	 */
+	public int sweep(final Bitmask b, final int xoffset, final int yoffset, final int dx, final int dy) {
+		final Bitmask a = this;
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		if (abounds.isEmpty() || bbounds.isEmpty()
+				|| bbounds.maxX() + xoffset + Math.max(dx, 0) < abounds.minX()
+				|| bbounds.minX() + xoffset + Math.min(dx, 0) > abounds.maxX()
+				|| bbounds.maxY() + yoffset + Math.max(dy, 0) < abounds.minY()
+				|| bbounds.minY() + yoffset + Math.min(dy, 0) > abounds.maxY()) {
+			return NO_CONTACT;
+		}
+		if (a.overlaps(b, xoffset, yoffset)) {
+			return 0;
+		}
+		final int steps = Math.abs(dx) + Math.abs(dy);
+		// Stripe j of an image holds b shifted into stripe base + j of this mask. Row r of b is at r + 1.
+		long[][] image = null;
+		long[][] previous = null;
+		int base = 0;
+		// Whether image holds b at the step before, so only its leading edge needs testing.
+		boolean edgeOnly = false;
+		int x = xoffset;
+		int y = yoffset;
+		// Walks the same path as sweepX and sweepY, without dividing.
+		long remainder = steps / 2;
+		for (int step = 1; step <= steps; step++) {
+			remainder += Math.abs(dx);
+			final boolean stepsX = remainder >= steps;
+			if (stepsX) {
+				remainder -= steps;
+				x += Integer.signum(dx);
+			} else {
+				y += Integer.signum(dy);
+			}
+			if (bbounds.maxX() + x < abounds.minX() || bbounds.minX() + x > abounds.maxX()
+					|| bbounds.maxY() + y < abounds.minY() || bbounds.minY() + y > abounds.maxY()) {
+				edgeOnly = false;
+				continue;
+			}
+			if (image == null) {
+				final int slots = (b.w - 1) / (int) BITMASK_W_LEN + 2;
+				image = new long[slots][b.h + 2];
+				previous = new long[slots][b.h + 2];
+			}
+			final int previousBase = base;
+			final long[][] before;
+			final int rowStep;
+			if (!edgeOnly) {
+				base = b.shiftInto(x, image);
+				before = null;
+				rowStep = 0;
+			} else if (stepsX) {
+				final long[][] swap = previous;
+				previous = image;
+				image = swap;
+				base = b.shiftInto(x, image);
+				before = previous;
+				rowStep = 0;
+			} else {
+				before = image;
+				rowStep = Integer.signum(dy);
+			}
+			final int firstRow = Math.max(Math.max(bbounds.minY(), abounds.minY() - y), 0);
+			final int lastRow = Math.min(bbounds.maxY(), abounds.maxY() - y);
+			if (a.hitsLeadingEdge(image, base, before, previousBase, rowStep, y, firstRow, lastRow)) {
+				return step;
+			}
+			edgeOnly = true;
+		}
+		return NO_CONTACT;
+	}
+
+	/**
+	 * @return how far a {@link #sweep(Bitmask, int, int, int, int)} by (dx,dy)
+	 *         has moved in x after step steps.
+	 */
+	public static int sweepX(final int step, final int dx, final int dy) {
+		final long steps = Math.abs((long) dx) + Math.abs((long) dy);
+		if (steps == 0) {
+			return 0;
+		}
+		return Integer.signum(dx) * (int) ((step * Math.abs((long) dx) + steps / 2) / steps);
+	}
+
+	/**
+	 * @return how far a {@link #sweep(Bitmask, int, int, int, int)} by (dx,dy)
+	 *         has moved in y after step steps.
+	 */
+	public static int sweepY(final int step, final int dx, final int dy) {
+		return Integer.signum(dy) * (step - Math.abs(sweepX(step, dx, dy)));
+	}
+
+	/*
+	 * Shifts this mask into the stripes of a mask it is at x in, and returns
+	 * the first of those stripes. The padding rows of image stay zero.
+	 */
+	private int shiftInto(final int x, final long[][] image) {
+		final int stripes = (w - 1) / (int) BITMASK_W_LEN + 1;
+		final int base = Math.floorDiv(x, (int) BITMASK_W_LEN);
+		for (int slot = 0; slot < image.length; slot++) {
+			final int bx = (base + slot) * (int) BITMASK_W_LEN - x;
+			final int lo = Math.floorDiv(bx, (int) BITMASK_W_LEN);
+			final int shift = bx & (int) BITMASK_W_MASK;
+			final boolean hasLo = lo >= 0 && lo < stripes;
+			final boolean hasHi = shift != 0 && lo + 1 >= 0 && lo + 1 < stripes;
+			final long[] words = image[slot];
+			for (int row = 0; row < h; row++) {
+				words[row + 1] = (hasLo ? bits.get(lo * h + row) >>> shift : 0)
+						| (hasHi ? bits.get((lo + 1) * h + row) << (BITMASK_W_LEN - shift) : 0);
+			}
+		}
+		return base;
+	}
+
+	/*
+	 * Tests the bits of image at y that were not set in previous, which was
+	 * one row further along rowStep, against this mask. Without previous, all
+	 * bits of image are tested.
+	 */
+	private boolean hitsLeadingEdge(final long[][] image, final int base, final long[][] previous,
+			final int previousBase, final int rowStep, final int y, final int firstRow, final int lastRow) {
+		final int astripes = (w - 1) / (int) BITMASK_W_LEN + 1;
+		for (int slot = 0; slot < image.length; slot++) {
+			final int astripe = base + slot;
+			if (astripe < 0 || astripe >= astripes) {
+				continue;
+			}
+			final long[] words = image[slot];
+			final int previousSlot = astripe - previousBase;
+			final long[] previousWords = previous != null && previousSlot >= 0 && previousSlot < previous.length
+					? previous[previousSlot]
+					: null;
+			final int ap = astripe * h + y;
+			for (int row = firstRow; row <= lastRow; row++) {
+				long word = words[row + 1];
+				if (previousWords != null) {
+					word &= ~previousWords[row + 1 + rowStep];
+				}
+				if (word != 0 && (bits.get(ap + row) & word) != 0) {
+					return true;
+				}
 			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells how mask b at (xoffset,yoffset) overlaps this mask, to respond to
+	 * a collision. The overlapping area and the areas one pixel to all four
+	 * sides are counted in a single pass over the words of this mask. Then the
+	 * separation is found by testing ever longer moves along the four axis
+	 * directions, trying the direction against the gradient first.
+	 * 
+	 * @return the response, or {@link OverlapResponse#NONE}.
+	 */
+	public OverlapResponse overlapResponse(final Bitmask b, final int xoffset, final int yoffset) {
+		final Bitmask a = this;
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		if (abounds.isEmpty() || bbounds.isEmpty()) {
+			return OverlapResponse.NONE;
+		}
+		// The part of this mask that b covers at any of the five offsets.
+		final int left = Math.max(abounds.minX(), bbounds.minX() + xoffset - 1);
+		final int right = Math.min(abounds.maxX(), bbounds.maxX() + xoffset + 1);
+		final int top = Math.max(abounds.minY(), bbounds.minY() + yoffset - 1);
+		final int bottom = Math.min(abounds.maxY(), bbounds.maxY() + yoffset + 1);
+		if (left > right || top > bottom) {
+			return OverlapResponse.NONE;
+		}
+
+		int area = 0;
+		int areaLeft = 0;
+		int areaRight = 0;
+		int areaUp = 0;
+		int areaDown = 0;
+		for (int stripe = left / (int) BITMASK_W_LEN; stripe <= right / (int) BITMASK_W_LEN; stripe++) {
+			final int ap = stripe * a.h;
+			for (int y = top; y <= bottom; y++) {
+				final long word = a.bits.get(ap + y);
+				if (word == 0) {
+					continue;
+				}
+				final int row = y - yoffset;
+				final long bword = b.shiftedWord(xoffset, stripe, row);
+				area += Long.bitCount(word & bword);
+				areaRight += Long.bitCount(word & (bword << 1 | b.shiftedWord(xoffset, stripe - 1, row) >>> 63));
+				areaLeft += Long.bitCount(word & (bword >>> 1 | b.shiftedWord(xoffset, stripe + 1, row) << 63));
+				areaDown += Long.bitCount(word & b.shiftedWord(xoffset, stripe, row - 1));
+				areaUp += Long.bitCount(word & b.shiftedWord(xoffset, stripe, row + 1));
+			}
+		}
+		final int gradientX = areaRight - areaLeft;
+		final int gradientY = areaDown - areaUp;
+		if (area == 0) {
+			return new OverlapResponse(0, gradientX, gradientY, 0, 0);
+		}
+
+		// Right, left, down, up, with the move after which the bounds are apart.
+		final int[] directionX = { 1, -1, 0, 0 };
+		final int[] directionY = { 0, 0, 1, -1 };
+		final int[] apart = { abounds.maxX() - bbounds.minX() - xoffset + 1,
+				bbounds.maxX() + xoffset - abounds.minX() + 1, abounds.maxY() - bbounds.minY() - yoffset + 1,
+				bbounds.maxY() + yoffset - abounds.minY() + 1 };
+		// Sort the directions that go against the gradient first.
+		final int[] order = { 0, 1, 2, 3 };
+		for (int i = 1; i < order.length; i++) {
+			for (int j = i; j > 0 && downhill(order[j], directionX, directionY, gradientX,
+					gradientY) > downhill(order[j - 1], directionX, directionY, gradientX, gradientY); j--) {
+				final int swap = order[j];
+				order[j] = order[j - 1];
+				order[j - 1] = swap;
+			}
+		}
+		for (int distance = 1;; distance++) {
+			for (final int direction : order) {
+				final int moveX = directionX[direction] * distance;
+				final int moveY = directionY[direction] * distance;
+				if (distance >= apart[direction] || !a.overlaps(b, xoffset + moveX, yoffset + moveY)) {
+					return new OverlapResponse(area, gradientX, gradientY, moveX, moveY);
+				}
+			}
+		}
+	}
+
+	private static int downhill(final int direction, final int[] directionX, final int[] directionY,
+			final int gradientX, final int gradientY) {
+		return -(directionX[direction] * gradientX + directionY[direction] * gradientY);
+	}
+
+	/*
+	 * Returns row of this mask shifted into stripe astripe of a mask it is at
+	 * x in, or 0 when the row does not exist.
+	 */
+	private long shiftedWord(final int x, final int astripe, final int row) {
+		if (row < 0 || row >= h) {
+			return 0;
+		}
+		final int stripes = (w - 1) / (int) BITMASK_W_LEN + 1;
+		final int bx = astripe * (int) BITMASK_W_LEN - x;
+		final int lo = Math.floorDiv(bx, (int) BITMASK_W_LEN);
+		final int shift = bx & (int) BITMASK_W_MASK;
+		long word = 0;
+		if (lo >= 0 && lo < stripes) {
+			word = bits.get(lo * h + row) >>> shift;
+		}
+		if (shift != 0 && lo + 1 >= 0 && lo + 1 < stripes) {
+			word |= bits.get((lo + 1) * h + row) << (BITMASK_W_LEN - shift);
+		}
+		return word;
+	}
+
+	/**
+	 * Returns the number of overlapping 'pixels'. The offsets are the same as
+	 * for {@link #overlaps(Bitmask, int, int)}.
+	 */
+	public int overlapArea(Bitmask b, int xoffset, int yoffset) {
+		Bitmask a = this;
+
+		if (!overlapsBoundingRectangleOf(b, xoffset, yoffset)) {
+			return 0;
+		}
+
+		if (xoffset < 0) {
 			final Bitmask c = a;
 			a = b;
 			b = c;
 			xoffset *= -1;
 			yoffset *= -1;
 		}
+
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		final int left = Math.max(abounds.minX(), bbounds.minX() + xoffset);
+		final int right = Math.min(abounds.maxX(), bbounds.maxX() + xoffset);
+		final int top = Math.max(abounds.minY(), bbounds.minY() + yoffset);
+		final int bottom = Math.min(abounds.maxY(), bbounds.maxY() + yoffset);
+		if (left > right || top > bottom) {
+			return 0;
+		}
+
+		int count = 0;
+		final Occupancy aoccupancy = a.occupancy();
+		final Occupancy boccupancy = b.occupancy();
+		final int astripes = (a.w - 1) / (int) BITMASK_W_LEN + 1;
+		final int base = xoffset / (int) BITMASK_W_LEN;
+		final int shift = xoffset & (int) BITMASK_W_MASK;
+		final int lastStripe = (right - xoffset) / (int) BITMASK_W_LEN;
+		for (int stripe = (left - xoffset) / (int) BITMASK_W_LEN; stripe <= lastStripe; stripe++) {
+			final int astripe = base + stripe;
+			final boolean next = shift != 0 && astripe + 1 < astripes;
+			for (int y = top; y <= bottom;) {
+				final long run = nextRun(aoccupancy, astripe, next, boccupancy, stripe, y, bottom, yoffset);
+				if (run == NO_OVERLAP) {
+					break;
+				}
+				final int start = overlapPosX(run);
+				final int rows = overlapPosY(run) - start + 1;
+				final int ap = astripe * a.h + start;
+				final int bp = stripe * b.h + start - yoffset;
+				if (shift == 0) {
+					count += overlapAreaRows(a.bits, ap, b.bits, bp, rows);
+				} else if (next) {
+					count += overlapAreaRows(a.bits, ap, ap + a.h, b.bits, bp, rows, shift, ALL_BITS_SET);
+				} else { /* zig-zag .. zig */
+					count += overlapAreaRows(a.bits, ap, ap, b.bits, bp, rows, shift, 0);
+				}
+				y = start + rows;
+			}
+		}
+		return count;
 	}
 
 	/*
-	 * Like Bitmask_overlap(), but will also give a point of intersection. x and
-	 * y are given in the coordinates of mask a, and are untouched if there is
-	 * no overlap.
-	 */
-	//	public final Point2D overlapPos(final Bitmask b, final int xoffset, final int yoffset) {
-	//		return null;
-	//	  const long *a_entry,*a_end, *b_entry, *ap, *bp;
-	//	  unsigned int shift,rshift,i,astripes,bstripes,xbase;
-	//	  
-	//	  if ((xoffset >= a->w) || (yoffset >= a->h) || (yoffset <= - b->h)) 
-	//	      return 0;
-	//	  
-	//	  if (xoffset >= 0) 
-	//	    {
-	//	      xbase = xoffset/Bitmask_W_LEN; /* first stripe from mask a */
-	//	      if (yoffset >= 0)
-	//		{
-	//		  a_entry = a->bits + a->h*xbase + yoffset;
-	//		  a_end = a_entry + MIN(b->h,a->h - yoffset);
-	//		  b_entry = b->bits;
-	//		}
-	//	      else
-	//		{
-	//		  a_entry = a->bits + a->h*xbase;
-	//		  a_end = a_entry + MIN(b->h + yoffset,a->h);
-	//		  b_entry = b->bits - yoffset;
-	//		  yoffset = 0; /* relied on below */
-	//		}
-	//	      shift = xoffset & Bitmask_W_MASK;
-	//	      if (shift)
-	//		{
-	//		  rshift = Bitmask_W_LEN - shift;
-	//		  astripes = (a->w - 1)/Bitmask_W_LEN - xoffset/Bitmask_W_LEN;
-	//		  bstripes = (b->w - 1)/Bitmask_W_LEN + 1;
-	//		  if (bstripes > astripes) /* zig-zag .. zig*/
-	//		    {
-	//		      for (i=0;i<astripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			      if (*ap & (*bp << shift)) 
-	//				{
-	//				  *y = ap - a_entry + yoffset;
-	//				  *x = (xbase + i)*Bitmask_W_LEN + firstsetbit(*ap & (*bp << shift));
-	//				  return 1;
-	//				}
-	//			  a_entry += a->h;
-	//			  a_end += a->h;
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			      if (*ap & (*bp >> rshift)) 
-	//				{
-	//				  *y = ap - a_entry + yoffset;
-	//				  *x = (xbase + i + 1)*Bitmask_W_LEN + firstsetbit(*ap & (*bp >> rshift));
-	//				  return 1;
-	//				}
-	//			  b_entry += b->h;
-	//			}
-	//		      for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			if (*ap & (*bp << shift)) 
-	//			  {
-	//			    *y = ap - a_entry + yoffset;
-	//			    *x = (xbase + astripes)*Bitmask_W_LEN + firstsetbit(*ap & (*bp << shift));
-	//			    return 1;
-	//			  }
-	//		      return 0;
-	//		    }
-	//		  else /* zig-zag */
-	//		    {
-	//		      for (i=0;i<bstripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			      if (*ap & (*bp << shift)) 
-	//				{
-	//				  *y = ap - a_entry + yoffset;
-	//				  *x = (xbase + i)*Bitmask_W_LEN + firstsetbit(*ap & (*bp << shift));
-	//				  return 1;
-	//				}
-	//			  a_entry += a->h;
-	//			  a_end += a->h;
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			      if (*ap & (*bp >> rshift)) 
-	//				{
-	//				  *y = ap - a_entry + yoffset;
-	//				  *x = (xbase + i + 1)*Bitmask_W_LEN + firstsetbit(*ap & (*bp >> rshift));
-	//				  return 1;
-	//				}
-	//			  b_entry += b->h;
-	//			}
-	//		      return 0;
-	//		    }
-	//		}
-	//	      else 
-	//	/* xoffset is a multiple of the stripe width, and the above routines
-	//	   won't work. This way is also slightly faster. */
-	//		{
-	//		  astripes = (MIN(b->w,a->w - xoffset) - 1)/Bitmask_W_LEN + 1;
-	//		  for (i=0;i<astripes;i++)
-	//		    {
-	//		      for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			{
-	//			  if (*ap & *bp)
-	//			    {
-	//			      *y = ap - a_entry + yoffset;
-	//			      *x = (xbase + i)*Bitmask_W_LEN + firstsetbit(*ap & *bp); 
-	//			      return 1;
-	//			    }
-	//			}
-	//		      a_entry += a->h;
-	//		      a_end += a->h;
-	//		      b_entry += b->h;
-	//		    }
-	//		  return 0;
-	//		}
-	//	    }
-	//	  else  
-	//	    {
-	//	      if (Bitmask_overlap_pos(b,a,-xoffset,-yoffset,x,y))
-	//		{
-	//		  *x += xoffset;
-	//		  *y += yoffset;
-	//		  return 1;
-	//		}
-	//	      else
-	//		return 0;
-	//	    }
-	//	}
-
-	/** Returns the number of overlapping 'pixels' */
-	//	public final int overlapArea(final Bitmask b, final int xoffset, final int yoffset) {
-	//	  const long *a_entry,*a_end, *b_entry, *ap,*bp;
-	//	  unsigned int shift,rshift,i,astripes,bstripes;
-	//	  unsigned int count = 0;
-	//
-	//	  if ((xoffset >= a->w) || (yoffset >= a->h) || (b->h + yoffset <= 0) || (b->w + xoffset <= 0)) 
-	//	      return 0;
-	//	  
-	//	  if (xoffset >= 0) 
-	//	    {
-	//	    swapentry:
-	//	      if (yoffset >= 0)
-	//		{
-	//		  a_entry = a->bits + a->h*(xoffset/Bitmask_W_LEN) + yoffset;
-	//		  a_end = a_entry + MIN(b->h,a->h - yoffset);
-	//		  b_entry = b->bits;
-	//		}
-	//	      else
-	//		{
-	//		  a_entry = a->bits + a->h*(xoffset/Bitmask_W_LEN);
-	//		  a_end = a_entry + MIN(b->h + yoffset,a->h);
-	//		  b_entry = b->bits - yoffset;
-	//		}
-	//	      shift = xoffset & Bitmask_W_MASK;
-	//	      if (shift)
-	//		{
-	//		  rshift = Bitmask_W_LEN - shift;
-	//		  astripes = (a->w - 1)/Bitmask_W_LEN - xoffset/Bitmask_W_LEN;
-	//		  bstripes = (b->w - 1)/Bitmask_W_LEN + 1;
-	//		  if (bstripes > astripes) /* zig-zag .. zig*/
-	//		    {
-	//		      for (i=0;i<astripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			    count += bitcount(((*ap >> shift) | (*(ap + a->h) << rshift)) & *bp);
-	//			  a_entry += a->h;
-	//			  a_end += a->h;
-	//			  b_entry += b->h;
-	//			}
-	//		      for (ap = a_entry,bp = b_entry;ap < a_end;)
-	//			count += bitcount((*ap++ >> shift) & *bp++);
-	//		      return count;
-	//		    }
-	//		  else /* zig-zag */
-	//		    {
-	//		      for (i=0;i<bstripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry;ap < a_end;ap++,bp++)
-	//			    count += bitcount(((*ap >> shift) | (*(ap + a->h) << rshift)) & *bp);
-	//			  a_entry += a->h;
-	//			  a_end += a->h;
-	//			  b_entry += b->h;
-	//			}
-	//		      return count;
-	//		    }
-	//		}
-	//	      else /* xoffset is a multiple of the stripe width, and the above routines wont work */
-	//		{
-	//		  astripes = (MIN(b->w,a->w - xoffset) - 1)/Bitmask_W_LEN + 1;
-	//		  for (i=0;i<astripes;i++)
-	//		    {
-	//		      for (ap = a_entry,bp = b_entry;ap < a_end;)
-	//			count += bitcount(*ap++ & *bp++);
-	//
-	//		      a_entry += a->h;
-	//		      a_end += a->h;
-	//		      b_entry += b->h;
-	//		    }
-	//		  return count;
-	//		}
-	//	    }
-	//	  else  
-	//	    {
-	//	      const Bitmask *c = a;
-	//	      a = b;
-	//	      b = c;
-	//	      xoffset *= -1;
-	//	      yoffset *= -1;
-	//	      goto swapentry;
-	//	    }
-	//	}
-
-	/** Fills a mask with the overlap of two other masks. A bitwise AND. */
-	//	public final void overlapMask(final Bitmask b, final Bitmask c, final int xoffset, final int yoffset) {
-	//	  const long *a_entry,*a_end, *ap;
-	//	  const long *b_entry, *b_end, *bp;
-	//	  long *c_entry, *c_end, *cp;
-	//	  int shift,rshift,i,astripes,bstripes;
-	//	  
-	//	  if ((xoffset >= a->w) || (yoffset >= a->h) || (yoffset <= - b->h)) 
-	//	      return;
-	//	  
-	//	  if (xoffset >= 0) 
-	//	    {
-	//	      if (yoffset >= 0)
-	//		{
-	//		  a_entry = a->bits + a->h*(xoffset/Bitmask_W_LEN) + yoffset;
-	//		  c_entry = c->bits + c->h*(xoffset/Bitmask_W_LEN) + yoffset;
-	//		  a_end = a_entry + MIN(b->h,a->h - yoffset);
-	//		  b_entry = b->bits;
-	//		}
-	//	      else
-	//		{
-	//		  a_entry = a->bits + a->h*(xoffset/Bitmask_W_LEN);
-	//		  c_entry = c->bits + c->h*(xoffset/Bitmask_W_LEN);
-	//		  a_end = a_entry + MIN(b->h + yoffset,a->h);
-	//		  b_entry = b->bits - yoffset;
-	//		}
-	//	      shift = xoffset & Bitmask_W_MASK;
-	//	      if (shift)
-	//		{
-	//		  rshift = Bitmask_W_LEN - shift;
-	//		  astripes = (a->w - 1)/Bitmask_W_LEN - xoffset/Bitmask_W_LEN;
-	//		  bstripes = (b->w - 1)/Bitmask_W_LEN + 1;
-	//		  if (bstripes > astripes) /* zig-zag .. zig*/
-	//		    {
-	//		      for (i=0;i<astripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			    *cp = *ap & (*bp << shift);
-	//			  a_entry += a->h;
-	//			  c_entry += c->h;
-	//			  a_end += a->h;
-	//			  for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			    *cp = *ap & (*bp >> rshift);
-	//			  b_entry += b->h;
-	//			}
-	//		      for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			*cp = *ap & (*bp << shift);
-	//		    }
-	//		  else /* zig-zag */
-	//		    {
-	//		      for (i=0;i<bstripes;i++)
-	//			{
-	//			  for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			    *cp = *ap & (*bp << shift);
-	//			  a_entry += a->h;
-	//			  c_entry += c->h;
-	//			  a_end += a->h;
-	//			  for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			    *cp = *ap & (*bp >> rshift);
-	//			  b_entry += b->h;
-	//			}
-	//		    }
-	//		}
-	//	      else /* xoffset is a multiple of the stripe width, 
-	//		      and the above routines won't work. */
-	//		{
-	//		  astripes = (MIN(b->w,a->w - xoffset) - 1)/Bitmask_W_LEN + 1;
-	//		  for (i=0;i<astripes;i++)
-	//		    {
-	//		      for (ap = a_entry,bp = b_entry,cp = c_entry;ap < a_end;ap++,bp++,cp++)
-	//			{
-	//			  *cp = *ap & *bp;
-	//			}
-	//		      a_entry += a->h;
-	//		      c_entry += c->h;
-	//		      a_end += a->h;
-	//		      b_entry += b->h;
-	//		    }
-	//		}
-	//	    }
-	//	  else  
-	//	    {
-	//	      xoffset *= -1;
-	//	      yoffset *= -1;
-	//
-	//	      if (yoffset >= 0)
-	//		{
-	//		  b_entry = b->bits + b->h*(xoffset/Bitmask_W_LEN) + yoffset;
-	//		  b_end = b_entry + MIN(a->h,b->h - yoffset);
-	//		  a_entry = a->bits;
-	//		  c_entry = c->bits;
-	//		}
-	//	      else
-	//		{
-	//		  b_entry = b->bits + b->h*(xoffset/Bitmask_W_LEN);
-	//		  b_end = b_entry + MIN(a->h + yoffset,b->h);
-	//		  a_entry = a->bits - yoffset;
-	//		  c_entry = c->bits - yoffset;
-	//		}
-	//	      shift = xoffset & Bitmask_W_MASK;
-	//	      if (shift)
-	//		{
-	//		  rshift = Bitmask_W_LEN - shift;
-	//		  astripes = (b->w - 1)/Bitmask_W_LEN - xoffset/Bitmask_W_LEN;
-	//		  bstripes = (a->w - 1)/Bitmask_W_LEN + 1;
-	//		  if (bstripes > astripes) /* zig-zag .. zig*/
-	//		    {
-	//		      for (i=0;i<astripes;i++)
-	//			{
-	//			  for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			    *cp = *ap & (*bp >> shift);
-	//			  b_entry += b->h;
-	//			  b_end += b->h;
-	//			  for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			    *cp = *ap & (*bp <<rshift); 
-	//			  a_entry += a->h;
-	//			  c_entry += c->h;
-	//			}
-	//		      for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			*cp = *ap & (*bp >> shift);
-	//		    }
-	//		  else /* zig-zag */
-	//		    {
-	//		      for (i=0;i<bstripes;i++)
-	//			{
-	//			  for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			    *cp = *ap & (*bp >> shift);
-	//			  b_entry += b->h;
-	//			  b_end += b->h;
-	//			  for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			    *cp = *ap & (*bp << rshift);
-	//			  a_entry += a->h;
-	//			  c_entry += c->h;
-	//			}
-	//		    }
-	//		}
-	//	      else /* xoffset is a multiple of the stripe width, and the above routines won't work. */
-	//		{
-	//		  astripes = (MIN(a->w,b->w - xoffset) - 1)/Bitmask_W_LEN + 1;
-	//		  for (i=0;i<astripes;i++)
-	//		    {
-	//		      for (bp = b_entry,ap = a_entry,cp = c_entry;bp < b_end;bp++,ap++,cp++)
-	//			{
-	//			  *cp = *ap & *bp;
-	//			}
-	//		      b_entry += b->h;
-	//		      b_end += b->h;
-	//		      a_entry += a->h;
-	//		      c_entry += c->h;
-	//		    }
-	//		}
-	//	      xoffset *= -1;
-	//	      yoffset *= -1;
-	//	    }	
-	//	  /* Zero out bits outside the mask rectangle (to the right), if there
-	//	   is a chance we were drawing there. */
-	//	  if (xoffset + b->w > c->w)
-	//	    {
-	//	      long edgemask;
-	//	      int n = c->w/Bitmask_W_LEN;
-	//	      shift = (n + 1)*Bitmask_W_LEN - c->w;
-	//	      edgemask = (~(long)0) >> shift;
-	//	      c_end = c->bits + n*c->h + MIN(c->h,b->h + yoffset);
-	//	      for (cp = c->bits + n*c->h + MAX(yoffset,0);cp<c_end;cp++)
-	//		*cp &= edgemask;
-	//	    }
-	//	}
+	 * Finds the next run of rows of a, from row y up to row bottom, in which
+	 * stripe bstripe of b may overlap stripe astripe of a, or the stripe after
+	 * it when next is set. Returns the first and last row of the run packed
+	 * like a position, or NO_OVERLAP. Without summaries the rest of the range
+	 * is one run.
+	 */
+	private static long nextRun(final Occupancy aoccupancy, final int astripe, final boolean next,
+			final Occupancy boccupancy, final int bstripe, final int y, final int bottom, final int yoffset) {
+		if (aoccupancy == null || boccupancy == null) {
+			return packPos(y, bottom);
+		}
+		final int lastBand = (bottom - yoffset) / Occupancy.BAND_HEIGHT;
+		final int bandShift = Math.floorDiv(yoffset, Occupancy.BAND_HEIGHT);
+		final boolean straddles = Math.floorMod(yoffset, Occupancy.BAND_HEIGHT) != 0;
+		int band = (y - yoffset) / Occupancy.BAND_HEIGHT;
+		long matches;
+		while ((matches = matchingBands(aoccupancy, astripe, next, boccupancy, bstripe, band, lastBand, bandShift,
+				straddles)) == 0) {
+			band += Long.SIZE;
+			if (band > lastBand) {
+				return NO_OVERLAP;
+			}
+		}
+		final int skip = Long.numberOfTrailingZeros(matches);
+		final int firstBand = band + skip;
+		int length = Long.numberOfTrailingZeros(~(matches >>> skip));
+		band = firstBand + length;
+		// The run may go on in the next 64 bands.
+		boolean open = skip + length == Long.SIZE;
+		while (open && band <= lastBand) {
+			length = Long.numberOfTrailingZeros(
+					~matchingBands(aoccupancy, astripe, next, boccupancy, bstripe, band, lastBand, bandShift, straddles));
+			band += length;
+			open = length == Long.SIZE;
+		}
+		return packPos(Math.max(firstBand * Occupancy.BAND_HEIGHT + yoffset, y),
+				Math.min(band * Occupancy.BAND_HEIGHT - 1 + yoffset, bottom));
+	}
+
+	/*
+	 * Returns the 64 bands of b, starting at band and ending at lastBand at the
+	 * latest, that are occupied in b and in the rows of a they cover. Band n of
+	 * b covers band n + bandShift of a, and the one after it when it
+	 * straddles two bands of a.
+	 */
+	private static long matchingBands(final Occupancy aoccupancy, final int astripe, final boolean next,
+			final Occupancy boccupancy, final int bstripe, final int band, final int lastBand, final int bandShift,
+			final boolean straddles) {
+		final int aband = band + bandShift;
+		long aoccupied = aoccupancy.window(astripe, aband);
+		if (straddles) {
+			aoccupied |= aoccupancy.window(astripe, aband + 1);
+		}
+		if (next) {
+			aoccupied |= aoccupancy.window(astripe + 1, aband);
+			if (straddles) {
+				aoccupied |= aoccupancy.window(astripe + 1, aband + 1);
+			}
+		}
+		long matches = boccupancy.window(bstripe, band) & aoccupied;
+		if (lastBand - band < Long.SIZE - 1) {
+			matches &= ~(ALL_BITS_SET << (lastBand - band + 1));
+		}
+		return matches;
+	}
+
+	/*
+	 * The row loops of the overlap kernels. Each one handles a run of rows in
+	 * one stripe. The shifted variants combine stripe ap of a, shifted right,
+	 * with the next stripe app, shifted left and masked with himask, which is
+	 * zero when there is no next stripe. When both masks are on the heap, the
+	 * loops run on the arrays, and long runs go to the vector kernels when they
+	 * are available.
+	 */
+
+	private static boolean overlapsRows(final BitmaskStorage a, final int ap, final BitmaskStorage b, final int bp,
+			final int rows) {
+		if (a instanceof HeapStorage heapA && b instanceof HeapStorage heapB) {
+			return overlapsRows(heapA.words, ap, heapB.words, bp, rows);
+		}
+		for (int i = 0; i < rows; i++) {
+			if ((a.get(ap + i) & b.get(bp + i)) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean overlapsRows(final long[] a, final int ap, final long[] b, final int bp, final int rows) {
+		if (VECTORIZED && rows >= VECTOR_MIN_ROWS) {
+			return VectorKernels.overlapsRows(a, ap, b, bp, rows);
+		}
+		for (int i = 0; i < rows; i++) {
+			if ((a[ap + i] & b[bp + i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean overlapsRows(final BitmaskStorage a, final int ap, final int app, final BitmaskStorage b,
+			final int bp, final int rows, final int shift, final long himask) {
+		if (a instanceof HeapStorage heapA && b instanceof HeapStorage heapB) {
+			return overlapsRows(heapA.words, ap, app, heapB.words, bp, rows, shift, himask);
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		for (int i = 0; i < rows; i++) {
+			if ((((a.get(ap + i) >>> shift) | (a.get(app + i) << rshift & himask)) & b.get(bp + i)) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean overlapsRows(final long[] a, final int ap, final int app, final long[] b, final int bp,
+			final int rows, final int shift, final long himask) {
+		if (VECTORIZED && rows >= VECTOR_MIN_ROWS) {
+			return VectorKernels.overlapsRows(a, ap, app, b, bp, rows, shift, himask);
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		for (int i = 0; i < rows; i++) {
+			if ((((a[ap + i] >>> shift) | (a[app + i] << rshift & himask)) & b[bp + i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int overlapAreaRows(final BitmaskStorage a, final int ap, final BitmaskStorage b, final int bp,
+			final int rows) {
+		if (a instanceof HeapStorage heapA && b instanceof HeapStorage heapB) {
+			return overlapAreaRows(heapA.words, ap, heapB.words, bp, rows);
+		}
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			count += Long.bitCount(a.get(ap + i) & b.get(bp + i));
+		}
+		return count;
+	}
+
+	private static int overlapAreaRows(final long[] a, final int ap, final long[] b, final int bp, final int rows) {
+		if (VECTORIZED && rows >= VECTOR_MIN_ROWS) {
+			return VectorKernels.overlapAreaRows(a, ap, b, bp, rows);
+		}
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			count += Long.bitCount(a[ap + i] & b[bp + i]);
+		}
+		return count;
+	}
+
+	private static int overlapAreaRows(final BitmaskStorage a, final int ap, final int app, final BitmaskStorage b,
+			final int bp, final int rows, final int shift, final long himask) {
+		if (a instanceof HeapStorage heapA && b instanceof HeapStorage heapB) {
+			return overlapAreaRows(heapA.words, ap, app, heapB.words, bp, rows, shift, himask);
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			count += Long.bitCount(((a.get(ap + i) >>> shift) | (a.get(app + i) << rshift & himask)) & b.get(bp + i));
+		}
+		return count;
+	}
+
+	private static int overlapAreaRows(final long[] a, final int ap, final int app, final long[] b, final int bp,
+			final int rows, final int shift, final long himask) {
+		if (VECTORIZED && rows >= VECTOR_MIN_ROWS) {
+			return VectorKernels.overlapAreaRows(a, ap, app, b, bp, rows, shift, himask);
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			count += Long.bitCount(((a[ap + i] >>> shift) | (a[app + i] << rshift & himask)) & b[bp + i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Fills mask c with the overlap of this mask and b, a bitwise AND. c must
+	 * have the same size as this mask, and may be this mask itself. Every bit
+	 * of c is written, so c can be reused without clearing it first. The
+	 * offsets are the same as for {@link #overlaps(Bitmask, int, int)}.
+	 */
+	public void overlapMask(final Bitmask b, final Bitmask c, final int xoffset, final int yoffset) {
+		if (c.w != w || c.h != h) {
+			throw new IllegalArgumentException("Mask c should be " + w + "x" + h + ", but it is " + c.w + "x" + c.h);
+		}
+		combine(b, xoffset, yoffset, c, AND);
+	}
+
+	/**
+	 * The word level engine behind overlapMask and {@link BitmaskModifier}. It
+	 * shifts the stripes of b into the stripes of this mask, clipping at all
+	 * four edges, and combines them with the words of this mask using
+	 * operation. The result is written into c, which must have the size of
+	 * this mask. AND writes every bit of c, the other operations only write the
+	 * area covered by b, so for them c should be this mask.
+	 */
+	void combine(final Bitmask b, final int xoffset, final int yoffset, final Bitmask c, final int operation) {
+		final Bitmask a = this;
+		c.checkNotFrozen();
+
+		if (!overlapsBoundingRectangleOf(b, xoffset, yoffset)) {
+			if (operation == AND) {
+				c.clear();
+			}
+			return;
+		}
+
+		/*
+		 * Only the bounds of the set bits of b can change anything. AND and
+		 * AND_NOT leave everything outside the bounds of a unchanged or zero, so
+		 * for them the intersection with those is enough.
+		 */
+		final Bounds abounds = a.bounds();
+		final Bounds bbounds = b.bounds();
+		int left = Math.max(bbounds.minX() + xoffset, 0);
+		int right = Math.min(bbounds.maxX() + xoffset, a.w - 1);
+		int top = Math.max(bbounds.minY() + yoffset, 0);
+		int bottom = Math.min(bbounds.maxY() + yoffset, a.h - 1);
+		if (operation == AND || operation == AND_NOT) {
+			left = Math.max(left, abounds.minX());
+			right = Math.min(right, abounds.maxX());
+			top = Math.max(top, abounds.minY());
+			bottom = Math.min(bottom, abounds.maxY());
+		}
+		if (left > right || top > bottom) {
+			if (operation == AND) {
+				c.clear();
+			}
+			return;
+		}
+		bottom++;
+
+		final int astripes = (a.w - 1) / (int) BITMASK_W_LEN + 1;
+		final int bstripes = (b.w - 1) / (int) BITMASK_W_LEN + 1;
+		final int firstStripe = left / (int) BITMASK_W_LEN;
+		final int lastStripe = right / (int) BITMASK_W_LEN;
+		/* Zero out bits outside the mask rectangle (to the right) */
+		final long edgemask = ALL_BITS_SET >>> (astripes * BITMASK_W_LEN - a.w);
+		final BitmaskStorage abits = a.bits;
+		final BitmaskStorage bbits = b.bits;
+		final BitmaskStorage cbits = c.bits;
+
+		if (operation == AND) {
+			cbits.fill(0, firstStripe * a.h, 0);
+			cbits.fill((lastStripe + 1) * a.h, astripes * a.h, 0);
+		}
+		for (int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+			// The x coordinate in b of the first bit in this stripe.
+			final int bx = stripe * (int) BITMASK_W_LEN - xoffset;
+			final int lo = Math.floorDiv(bx, (int) BITMASK_W_LEN);
+			final int shift = bx & (int) BITMASK_W_MASK;
+			final long colmask = stripe == astripes - 1 ? edgemask : ALL_BITS_SET;
+			// Stripes of b that don't exist are read from a stripe that does, and masked away.
+			final long lomask = lo >= 0 ? colmask : 0;
+			final long himask = shift != 0 && lo + 1 < bstripes ? colmask : 0;
+			final int b_lo = Math.max(lo, 0) * b.h - yoffset;
+			final int b_hi = Math.min(lo + 1, bstripes - 1) * b.h - yoffset;
+			final int a_stripe = stripe * a.h;
+
+			if (operation == AND) {
+				cbits.fill(a_stripe, a_stripe + top, 0);
+				cbits.fill(a_stripe + bottom, a_stripe + a.h, 0);
+			}
+			combineRows(abits, a_stripe + top, bbits, b_lo + top, b_hi + top, cbits, bottom - top, shift, lomask,
+					himask, operation);
+		}
+		if (c != a) {
+			c.occupancy = null;
+		} else if (c.occupancy != null && (operation == OR || operation == XOR)) {
+			for (int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+				c.occupancy.mark(stripe, top, bottom - 1);
+			}
+		}
+		c.bounds = switch (operation) {
+			case AND -> new Bounds(left, top, right, bottom - 1, false);
+			case AND_NOT -> abounds.loose();
+			default -> abounds.union(bbounds, xoffset, yoffset, a.w, a.h);
+		};
+	}
+
+	/**
+	 * The row loop of {@link #combine(Bitmask, int, int, Bitmask, int)}.
+	 */
+	private static void combineRows(final BitmaskStorage a, final int ap, final BitmaskStorage b, final int blo,
+			final int bhi, final BitmaskStorage c, final int rows, final int shift, final long lomask,
+			final long himask, final int operation) {
+		if (a instanceof HeapStorage heapA && b instanceof HeapStorage heapB && c instanceof HeapStorage heapC) {
+			combineRows(heapA.words, ap, heapB.words, blo, bhi, heapC.words, rows, shift, lomask, himask, operation);
+			return;
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		for (int i = 0; i < rows; i++) {
+			final long word = (b.get(blo + i) >>> shift & lomask) | (b.get(bhi + i) << rshift & himask);
+			c.set(ap + i, switch (operation) {
+				case OR -> a.get(ap + i) | word;
+				case AND_NOT -> a.get(ap + i) & ~word;
+				case XOR -> a.get(ap + i) ^ word;
+				case AND -> a.get(ap + i) & word;
+				default -> throw new IllegalArgumentException("Don't know operation " + operation);
+			});
+		}
+	}
+
+	private static void combineRows(final long[] a, final int ap, final long[] b, final int blo, final int bhi,
+			final long[] c, final int rows, final int shift, final long lomask, final long himask,
+			final int operation) {
+		if (VECTORIZED && rows >= VECTOR_MIN_ROWS) {
+			VectorKernels.combineRows(a, ap, b, blo, bhi, c, rows, shift, lomask, himask, operation);
+			return;
+		}
+		final int rshift = (int) BITMASK_W_LEN - shift;
+		switch (operation) {
+			case OR -> {
+				for (int i = 0; i < rows; i++) {
+					c[ap + i] = a[ap + i] | ((b[blo + i] >>> shift & lomask) | (b[bhi + i] << rshift & himask));
+				}
+			}
+			case AND_NOT -> {
+				for (int i = 0; i < rows; i++) {
+					c[ap + i] = a[ap + i] & ~((b[blo + i] >>> shift & lomask) | (b[bhi + i] << rshift & himask));
+				}
+			}
+			case XOR -> {
+				for (int i = 0; i < rows; i++) {
+					c[ap + i] = a[ap + i] ^ ((b[blo + i] >>> shift & lomask) | (b[bhi + i] << rshift & himask));
+				}
+			}
+			case AND -> {
+				for (int i = 0; i < rows; i++) {
+					c[ap + i] = a[ap + i] & ((b[blo + i] >>> shift & lomask) | (b[bhi + i] << rshift & himask));
+				}
+			}
+			default -> throw new IllegalArgumentException("Don't know operation " + operation);
+		}
+	}
+
+	/**
+	 * Like {@link #combine(Bitmask, int, int, Bitmask, int)} with this mask as
+	 * c, but every word is written atomically, so threads can combine masks
+	 * into this mask at the same time. Only OR and AND_NOT are supported.
+	 * Words that don't change are not written.
+	 */
+	void combineAtomic(final Bitmask b, final int xoffset, final int yoffset, final int operation) {
+		if (operation != OR && operation != AND_NOT) {
+			throw new IllegalArgumentException("Don't know atomic operation " + operation);
+		}
+		checkNotFrozen();
+		final Bounds bbounds = b.bounds();
+		if (bbounds.isEmpty()) {
+			return;
+		}
+		final int left = Math.max(bbounds.minX() + xoffset, 0);
+		final int right = Math.min(bbounds.maxX() + xoffset, w - 1);
+		final int top = Math.max(bbounds.minY() + yoffset, 0);
+		final int bottom = Math.min(bbounds.maxY() + yoffset, h - 1) + 1;
+		if (left > right || top >= bottom) {
+			return;
+		}
+
+		final int astripes = (w - 1) / (int) BITMASK_W_LEN + 1;
+		final int bstripes = (b.w - 1) / (int) BITMASK_W_LEN + 1;
+		final long edgemask = ALL_BITS_SET >>> (astripes * BITMASK_W_LEN - w);
+		final BitmaskStorage bbits = b.bits;
+		for (int stripe = left / (int) BITMASK_W_LEN; stripe <= right / (int) BITMASK_W_LEN; stripe++) {
+			final int bx = stripe * (int) BITMASK_W_LEN - xoffset;
+			final int lo = Math.floorDiv(bx, (int) BITMASK_W_LEN);
+			final int shift = bx & (int) BITMASK_W_MASK;
+			final int rshift = (int) BITMASK_W_LEN - shift;
+			final long colmask = stripe == astripes - 1 ? edgemask : ALL_BITS_SET;
+			final long lomask = lo >= 0 ? colmask : 0;
+			final long himask = shift != 0 && lo + 1 < bstripes ? colmask : 0;
+			final int b_lo = Math.max(lo, 0) * b.h - yoffset;
+			final int b_hi = Math.min(lo + 1, bstripes - 1) * b.h - yoffset;
+			final int a_stripe = stripe * h;
+			for (int y = top; y < bottom; y++) {
+				final long word = (bbits.get(b_lo + y) >>> shift & lomask) | (bbits.get(b_hi + y) << rshift & himask);
+				if (word == 0) {
+					continue;
+				}
+				if (operation == OR) {
+					bits.orAtomic(a_stripe + y, word);
+				} else {
+					bits.andNotAtomic(a_stripe + y, word);
+				}
+			}
+		}
+		forgetSummariesAtomic(operation == OR);
+	}
+
+	/**
+	 * Like {@link #overlapMask(Bitmask, Bitmask, int, int)}, but returns the
+	 * overlap in a new mask of the same size as this mask.
+	 */
+	public Bitmask overlapMask(final Bitmask b, final int xoffset, final int yoffset) {
+		final Bitmask c = new Bitmask(w, h);
+		overlapMask(b, c, xoffset, yoffset);
+		return c;
+	}
 
 	/**
 	 * @return a copy of this bitmask. It uses the copy constructor.
@@ -671,8 +1396,8 @@ public final class Bitmask implements Serializable {
 		if (w != otherBitmask.w || h != otherBitmask.h) {
 			return false;
 		}
-		for (int i = 0; i < bits.length; i++) {
-			if (bits[i] != otherBitmask.bits[i]) {
+		for (int i = 0; i < bits.size(); i++) {
+			if (bits.get(i) != otherBitmask.bits.get(i)) {
 				return false;
 			}
 		}
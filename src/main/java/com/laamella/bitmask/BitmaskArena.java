@@ -0,0 +1,58 @@
+package com.laamella.bitmask;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates bitmasks whose bits are stored outside of the Java heap, so large
+ * masks don't make garbage collection slower and don't count against the
+ * maximum heap size. They work exactly like normal bitmasks.
+ * <p>
+ * The masks live as long as the arena. After the arena is closed, using one of
+ * its masks throws an IndexOutOfBoundsException. The memory itself is handed
+ * back when the garbage collector finds the (small) buffer objects that owned
+ * it.
+ * 
+ * <pre>
+ * try (BitmaskArena arena = new BitmaskArena()) {
+ * 	Bitmask world = arena.createBitmask(100000, 20000);
+ * 	...
+ * }
+ * </pre>
+ */
+public final class BitmaskArena implements AutoCloseable {
+	private final List<BufferStorage> storages = new ArrayList<>();
+	private boolean closed = false;
+
+	/**
+	 * Creates an empty off heap bitmask. A single mask can be at most 2^34
+	 * pixels.
+	 */
+	public synchronized Bitmask createBitmask(final int width, final int height) {
+		if (closed) {
+			throw new IllegalStateException("This arena is closed");
+		}
+		final long words = Bitmask.sizeInWords(width, height);
+		if (words > Integer.MAX_VALUE / Long.BYTES) {
+			throw new IllegalArgumentException("A " + width + "x" + height + " mask is too large for off heap storage");
+		}
+		final BufferStorage storage = new BufferStorage(
+				ByteBuffer.allocateDirect((int) words * Long.BYTES).order(ByteOrder.nativeOrder()));
+		storages.add(storage);
+		return new Bitmask(width, height, storage);
+	}
+
+	/**
+	 * Releases all masks created by this arena.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for (final BufferStorage storage : storages) {
+			storage.release();
+		}
+		storages.clear();
+	}
+}
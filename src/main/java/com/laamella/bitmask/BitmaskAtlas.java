@@ -0,0 +1,204 @@
+package com.laamella.bitmask;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file full of named bitmasks that can be opened without decoding anything.
+ * The file is memory mapped, and the masks use the mapped words directly as
+ * their storage, so opening an atlas costs little more than reading its index.
+ * Masks from an atlas are read only: changing one throws a
+ * ReadOnlyBufferException. Copy them with {@link Bitmask#Bitmask(Bitmask)} to
+ * change them.
+ * <p>
+ * The file format, all little endian:
+ * 
+ * <pre>
+ * "BITMASKS"         magic
+ * int                version, 1
+ * int                amount of masks
+ * per mask:
+ *   int              width
+ *   int              height
+ *   long             position of the first word in the file
+ *   unsigned short   length of the name in bytes
+ *   bytes            name, UTF-8
+ * per mask, starting at a multiple of 8:
+ *   long[]           the words, in the column stripe layout of {@link Bitmask}
+ * </pre>
+ * 
+ * The whole file must be smaller than 2GB.
+ */
+public final class BitmaskAtlas {
+	private static final byte[] MAGIC = "BITMASKS".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 2;
+
+	private final MappedByteBuffer file;
+	private final Map<String, Integer> indexes;
+	private final int[] widths;
+	private final int[] heights;
+	private final long[] positions;
+	private final Bitmask[] masks;
+
+	private BitmaskAtlas(final MappedByteBuffer file, final Map<String, Integer> indexes, final int[] widths,
+			final int[] heights, final long[] positions) {
+		this.file = file;
+		this.indexes = indexes;
+		this.widths = widths;
+		this.heights = heights;
+		this.positions = positions;
+		this.masks = new Bitmask[widths.length];
+	}
+
+	/**
+	 * Maps an atlas file into memory.
+	 * 
+	 * @throws IOException
+	 *             when the file can't be read, or is not an atlas.
+	 */
+	public static BitmaskAtlas open(final Path path) throws IOException {
+		final MappedByteBuffer file;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large for an atlas");
+			}
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		final ByteBuffer header = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			final byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(MAGIC, magic)) {
+				throw new IOException(path + " is not a bitmask atlas");
+			}
+			final int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + " has atlas version " + version + ", only " + VERSION + " is supported");
+			}
+			final int count = header.getInt();
+			if (count < 0) {
+				throw new IOException(path + " has a negative amount of masks");
+			}
+			if (count > header.remaining() / INDEX_ENTRY_SIZE) {
+				throw new IOException(path + " is truncated");
+			}
+			final Map<String, Integer> indexes = new HashMap<>(count * 2);
+			final int[] widths = new int[count];
+			final int[] heights = new int[count];
+			final long[] positions = new long[count];
+			for (int i = 0; i < count; i++) {
+				widths[i] = header.getInt();
+				heights[i] = header.getInt();
+				positions[i] = header.getLong();
+				final byte[] name = new byte[Short.toUnsignedInt(header.getShort())];
+				header.get(name);
+				indexes.put(new String(name, StandardCharsets.UTF_8), i);
+				if (widths[i] < 0 || heights[i] < 0) {
+					throw new IOException(path + " has a mask with a negative size");
+				}
+				if (positions[i] < 0 || positions[i] > file.capacity() || positions[i] != align(positions[i])
+						|| Bitmask.sizeInWords(widths[i], heights[i]) * Long.BYTES > file.capacity() - positions[i]) {
+					throw new IOException(path + " has a mask outside of the file");
+				}
+			}
+			return new BitmaskAtlas(file, indexes, widths, heights, positions);
+		} catch (final BufferUnderflowException e) {
+			throw new IOException(path + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Writes masks to an atlas file, in the iteration order of the map.
+	 */
+	public static void write(final Path path, final Map<String, Bitmask> masks) throws IOException {
+		final List<byte[]> names = new ArrayList<>(masks.size());
+		long indexSize = 0;
+		for (final String name : masks.keySet()) {
+			final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > 0xFFFF) {
+				throw new IllegalArgumentException("Name is too long: " + name);
+			}
+			names.add(bytes);
+			indexSize += INDEX_ENTRY_SIZE + bytes.length;
+		}
+		long position = align(MAGIC.length + 4 + 4 + indexSize);
+		if (position > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("These names don't fit in a 2GB atlas");
+		}
+
+		final ByteBuffer index = ByteBuffer.allocate((int) position).order(ByteOrder.LITTLE_ENDIAN);
+		index.put(MAGIC).putInt(VERSION).putInt(masks.size());
+		int i = 0;
+		for (final Bitmask mask : masks.values()) {
+			index.putInt(mask.getWidth()).putInt(mask.getHeight()).putLong(position);
+			index.putShort((short) names.get(i).length).put(names.get(i));
+			position += Bitmask.sizeInWords(mask.getWidth(), mask.getHeight()) * Long.BYTES;
+			i++;
+		}
+		if (position > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("These masks don't fit in a 2GB atlas");
+		}
+		index.clear();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (index.hasRemaining()) {
+				channel.write(index);
+			}
+			for (final Bitmask mask : masks.values()) {
+				final BitmaskStorage storage = mask.storage();
+				final ByteBuffer words = ByteBuffer.allocate(storage.size() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				for (int word = 0; word < storage.size(); word++) {
+					words.putLong(storage.get(word));
+				}
+				words.flip();
+				while (words.hasRemaining()) {
+					channel.write(words);
+				}
+			}
+		}
+	}
+
+	private static long align(final long position) {
+		return (position + Long.BYTES - 1) & -Long.BYTES;
+	}
+
+	/**
+	 * @return the names of all masks in the atlas.
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(indexes.keySet());
+	}
+
+	/**
+	 * @return the mask with this name, or null when there is no such mask. The
+	 *         mask is read only.
+	 */
+	public synchronized Bitmask get(final String name) {
+		final Integer index = indexes.get(name);
+		if (index == null) {
+			return null;
+		}
+		if (masks[index] == null) {
+			final int words = (int) Bitmask.sizeInWords(widths[index], heights[index]);
+			final ByteBuffer slice = file.slice((int) positions[index], words * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			masks[index] = new Bitmask(widths[index], heights[index], new BufferStorage(slice));
+		}
+		return masks[index];
+	}
+}
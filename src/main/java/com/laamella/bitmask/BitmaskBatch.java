@@ -0,0 +1,171 @@
+package com.laamella.bitmask;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tests one mask against many masks at once, like the bullets in a game
+ * against its terrain. Mask i is at (xs[i], ys[i]) relative to the tested
+ * mask, just like the offsets of {@link Bitmask#overlaps(Bitmask, int, int)}.
+ * <p>
+ * The candidates are handled in blocks of {@link #BLOCK_SIZE}. Within a block
+ * they are tested in the order of the stripe of the tested mask they land on,
+ * so the words of a stripe are still in the cache for the next candidate.
+ * Blocks can be spread over a ForkJoinPool.
+ */
+public final class BitmaskBatch {
+	/** The amount of candidates in a block, a multiple of 64. */
+	public static final int BLOCK_SIZE = 1024;
+
+	/** Per thread scratch space, so that repeated calls don't allocate. */
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	private BitmaskBatch() {
+		// can't instantiate
+	}
+
+	/**
+	 * Tests mask a against the first count masks. Hit i sets bit i % 64 of
+	 * hits[i / 64], and the other bits of those words are cleared. Null masks
+	 * never hit.
+	 */
+	public static void overlaps(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys,
+			final int count, final long[] hits) {
+		overlaps(a, masks, xs, ys, count, hits, null);
+	}
+
+	/**
+	 * Like {@link #overlaps(Bitmask, Bitmask[], int[], int[], int, long[])}, but
+	 * spreads the blocks over pool when there is more than one.
+	 *
+	 * @param pool
+	 *            the pool to use, or null to do all work on this thread.
+	 */
+	public static void overlaps(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys,
+			final int count, final long[] hits, final ForkJoinPool pool) {
+		final int words = (count + Long.SIZE - 1) / Long.SIZE;
+		if (hits.length < words) {
+			throw new IllegalArgumentException("Need " + words + " words for the hits, but got " + hits.length);
+		}
+		final int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		if (pool == null || blocks <= 1) {
+			final long[] order = SCRATCH.get().order;
+			for (int block = 0; block < blocks; block++) {
+				testBlock(a, masks, xs, ys, count, hits, block, order);
+			}
+		} else {
+			pool.invoke(new BlockTask(a, masks, xs, ys, count, hits, 0, blocks));
+		}
+	}
+
+	/**
+	 * Tests mask a against the first count masks, and writes the indexes of
+	 * the masks that hit to hits, in increasing order. hits must have room for
+	 * count indexes.
+	 *
+	 * @return the amount of hits.
+	 */
+	public static int overlaps(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys,
+			final int count, final int[] hits) {
+		return overlaps(a, masks, xs, ys, count, hits, null);
+	}
+
+	/**
+	 * Tests mask a against the first count masks, and writes the indexes of
+	 * the masks that hit to hits, in increasing order. hits must have room for
+	 * count indexes.
+	 *
+	 * @param pool
+	 *            the pool to spread the work over, or null to do all work on
+	 *            this thread.
+	 * @return the amount of hits.
+	 */
+	public static int overlaps(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys,
+			final int count, final int[] hits, final ForkJoinPool pool) {
+		if (hits.length < count) {
+			throw new IllegalArgumentException("Need room for " + count + " hits, but got " + hits.length);
+		}
+		final int words = (count + Long.SIZE - 1) / Long.SIZE;
+		final long[] bits = SCRATCH.get().bits(words);
+		overlaps(a, masks, xs, ys, count, bits, pool);
+		int hitCount = 0;
+		for (int word = 0; word < words; word++) {
+			for (long rest = bits[word]; rest != 0; rest &= rest - 1) {
+				hits[hitCount++] = word * Long.SIZE + Long.numberOfTrailingZeros(rest);
+			}
+		}
+		return hitCount;
+	}
+
+	/*
+	 * Tests one block. The order array is scratch space of at least one block.
+	 * Every block owns its own words of hits, so blocks can run in parallel.
+	 */
+	private static void testBlock(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys,
+			final int count, final long[] hits, final int block, final long[] order) {
+		final int first = block * BLOCK_SIZE;
+		final int size = Math.min(BLOCK_SIZE, count - first);
+		// Sort by stripe, and by index within a stripe.
+		for (int i = 0; i < size; i++) {
+			order[i] = (long) (xs[first + i] >> 6) << 32 | i;
+		}
+		Arrays.sort(order, 0, size);
+		Arrays.fill(hits, first / Long.SIZE, (first + size + Long.SIZE - 1) / Long.SIZE, 0);
+		for (int j = 0; j < size; j++) {
+			final int index = first + (int) order[j];
+			final Bitmask b = masks[index];
+			if (b != null && a.overlaps(b, xs[index], ys[index])) {
+				hits[index / Long.SIZE] |= 1L << index;
+			}
+		}
+	}
+
+	private static final class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Bitmask a;
+		private final Bitmask[] masks;
+		private final int[] xs;
+		private final int[] ys;
+		private final int count;
+		private final long[] hits;
+		private final int fromBlock;
+		private final int toBlock;
+
+		BlockTask(final Bitmask a, final Bitmask[] masks, final int[] xs, final int[] ys, final int count,
+				final long[] hits, final int fromBlock, final int toBlock) {
+			this.a = a;
+			this.masks = masks;
+			this.xs = xs;
+			this.ys = ys;
+			this.count = count;
+			this.hits = hits;
+			this.fromBlock = fromBlock;
+			this.toBlock = toBlock;
+		}
+
+		@Override
+		protected void compute() {
+			if (toBlock - fromBlock > 1) {
+				final int middle = (fromBlock + toBlock) >>> 1;
+				invokeAll(new BlockTask(a, masks, xs, ys, count, hits, fromBlock, middle),
+						new BlockTask(a, masks, xs, ys, count, hits, middle, toBlock));
+				return;
+			}
+			testBlock(a, masks, xs, ys, count, hits, fromBlock, SCRATCH.get().order);
+		}
+	}
+
+	private static final class Scratch {
+		final long[] order = new long[BLOCK_SIZE];
+		private long[] bits = new long[0];
+
+		long[] bits(final int words) {
+			if (bits.length < words) {
+				bits = new long[words];
+			}
+			return bits;
+		}
+	}
+}
@@ -3,13 +3,28 @@ package com.laamella.bitmask;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Factory for creating bitmasks in all kinds of ways that do not involve
  * another Bitmask.
  */
 public final class BitmaskFactory {
+	// Images with at least this many pixels are converted in parallel.
+	private static final long PARALLEL_PIXELS = 1 << 20;
+
 	private BitmaskFactory() {
 		// Can't instantiate.
 	}
@@ -31,6 +46,11 @@ public final class BitmaskFactory {
 	/**
 	 * Create a bitmask with bits set for every pixel in the image that has an
 	 * alpha value of more than threshold.
+	 * <p>
+	 * Alpha channels stored in bytes (like TYPE_4BYTE_ABGR) or packed in ints
+	 * (like TYPE_INT_ARGB) are read straight from the image data, 64 pixels at
+	 * a time. Note that Java2D may stop accelerating an image once its data has
+	 * been accessed this way. Large images are converted in parallel.
 	 * 
 	 * @param image
 	 *            source image.
@@ -48,21 +68,83 @@ public final class BitmaskFactory {
 		if (alphaRaster == null) {
 			throw new IllegalArgumentException("Image has no alpha channel");
 		}
-		final int[] pixelData = new int[1];
-		for (int x = 0; x < alphaRaster.getWidth(); x++) {
-			for (int y = 0; y < alphaRaster.getHeight(); y++) {
-				alphaRaster.getPixel(x, y, pixelData);
-				if (pixelData[0] > intThreshold) {
-					bitmask.setBit(x, y);
+		final int width = alphaRaster.getWidth();
+		// Where pixel (0,0) of the raster is in the sample model.
+		final int x0 = alphaRaster.getMinX() - alphaRaster.getSampleModelTranslateX();
+		final int y0 = alphaRaster.getMinY() - alphaRaster.getSampleModelTranslateY();
+		final SampleModel sampleModel = alphaRaster.getSampleModel();
+		final DataBuffer dataBuffer = alphaRaster.getDataBuffer();
+
+		if (sampleModel instanceof ComponentSampleModel components && dataBuffer instanceof DataBufferByte bytes) {
+			final int bank = components.getBankIndices()[0];
+			final byte[] data = bytes.getData(bank);
+			final int pixelStride = components.getPixelStride();
+			final int scanlineStride = components.getScanlineStride();
+			final int origin = bytes.getOffsets()[bank] + components.getOffset(x0, y0, 0);
+			forEachRow(bitmask, y -> {
+				final int line = origin + y * scanlineStride;
+				for (int stripe = 0, x = 0; x < width; stripe++) {
+					long word = 0;
+					for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+						final int alpha = data[line + x * pixelStride] & 0xFF;
+						word |= (long) ((intThreshold - alpha) >>> 31) << bit;
+					}
+					bitmask.setWord(stripe, y, word);
+				}
+			});
+		} else if (sampleModel instanceof SinglePixelPackedSampleModel packed && dataBuffer instanceof DataBufferInt ints) {
+			final int[] data = ints.getData();
+			final int alphaMask = packed.getBitMasks()[0];
+			final int alphaOffset = packed.getBitOffsets()[0];
+			final int scanlineStride = packed.getScanlineStride();
+			final int origin = ints.getOffset() + packed.getOffset(x0, y0);
+			forEachRow(bitmask, y -> {
+				final int line = origin + y * scanlineStride;
+				for (int stripe = 0, x = 0; x < width; stripe++) {
+					long word = 0;
+					for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+						final int alpha = (data[line + x] & alphaMask) >>> alphaOffset;
+						word |= (long) ((intThreshold - alpha) >>> 31) << bit;
+					}
+					bitmask.setWord(stripe, y, word);
+				}
+			});
+		} else {
+			final int[] pixelData = new int[1];
+			for (int x = 0; x < alphaRaster.getWidth(); x++) {
+				for (int y = 0; y < alphaRaster.getHeight(); y++) {
+					alphaRaster.getPixel(alphaRaster.getMinX() + x, alphaRaster.getMinY() + y, pixelData);
+					if (pixelData[0] > intThreshold) {
+						bitmask.setBit(x, y);
+					}
 				}
 			}
 		}
 		return bitmask;
 	}
 
+	/**
+	 * Runs a row converter for every row of the bitmask. Rows only write their
+	 * own words, so large bitmasks are done in parallel.
+	 */
+	private static void forEachRow(final Bitmask bitmask, final IntConsumer rowConverter) {
+		final IntStream rows = IntStream.range(0, bitmask.getHeight());
+		if ((long) bitmask.getWidth() * bitmask.getHeight() >= PARALLEL_PIXELS) {
+			rows.parallel().forEach(rowConverter);
+		} else {
+			rows.forEach(rowConverter);
+		}
+	}
+
 	/**
 	 * Create a bitmask with bits set for every pixel in the image that does not
 	 * exactly match the color key.
+	 * <p>
+	 * Images with packed int pixels (like TYPE_INT_RGB), 8 bit sRGB components
+	 * in bytes (like TYPE_3BYTE_BGR) or an indexed color model are compared
+	 * straight against the image data, 64 pixels at a time, without creating
+	 * any objects. Note that Java2D may stop accelerating an image once its data
+	 * has been accessed this way. Large images are converted in parallel.
 	 * 
 	 * @param image
 	 *            source image.
@@ -74,18 +156,142 @@ public final class BitmaskFactory {
 		final Bitmask bitmask = createEmptyBitmask(image.getWidth(), image.getHeight());
 		final Raster raster = image.getRaster();
 		final ColorModel colorModel = image.getColorModel();
-		for (int x = 0; x < image.getWidth(); x++) {
-			for (int y = 0; y < image.getHeight(); y++) {
-				final Object pixel = raster.getDataElements(x, y, null);
-				if (!(colorModel.getBlue(pixel) == key.getBlue() && colorModel.getRed(pixel) == key.getRed() && colorModel
-						.getGreen(pixel) == key.getGreen())) {
-					bitmask.setBit(x, y);
+		final int width = raster.getWidth();
+		// Where pixel (0,0) of the raster is in the sample model.
+		final int x0 = raster.getMinX() - raster.getSampleModelTranslateX();
+		final int y0 = raster.getMinY() - raster.getSampleModelTranslateY();
+		final SampleModel sampleModel = raster.getSampleModel();
+		final DataBuffer dataBuffer = raster.getDataBuffer();
+
+		if (colorModel instanceof DirectColorModel direct && !direct.isAlphaPremultiplied()
+				&& direct.getColorSpace().isCS_sRGB() && Integer.bitCount(direct.getRedMask()) == 8 && Integer.bitCount(direct.getGreenMask()) == 8
+				&& Integer.bitCount(direct.getBlueMask()) == 8
+				&& sampleModel instanceof SinglePixelPackedSampleModel packed && dataBuffer instanceof DataBufferInt ints) {
+			final int rgbMask = direct.getRedMask() | direct.getGreenMask() | direct.getBlueMask();
+			final int keyPixel = key.getRed() << Integer.numberOfTrailingZeros(direct.getRedMask())
+					| key.getGreen() << Integer.numberOfTrailingZeros(direct.getGreenMask())
+					| key.getBlue() << Integer.numberOfTrailingZeros(direct.getBlueMask());
+			final int[] data = ints.getData();
+			final int scanlineStride = packed.getScanlineStride();
+			final int origin = ints.getOffset() + packed.getOffset(x0, y0);
+			forEachRow(bitmask, y -> {
+				final int line = origin + y * scanlineStride;
+				for (int stripe = 0, x = 0; x < width; stripe++) {
+					long word = 0;
+					for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+						if ((data[line + x] & rgbMask) != keyPixel) {
+							word |= 1L << bit;
+						}
+					}
+					bitmask.setWord(stripe, y, word);
+				}
+			});
+		} else if (colorModel instanceof ComponentColorModel && !colorModel.isAlphaPremultiplied()
+				&& colorModel.getColorSpace().isCS_sRGB() && colorModel.getNumColorComponents() == 3
+				&& colorModel.getTransferType() == DataBuffer.TYPE_BYTE
+				&& sampleModel instanceof ComponentSampleModel components && dataBuffer instanceof DataBufferByte bytes
+				&& allInBank(components.getBankIndices(), components.getBankIndices()[0])) {
+			final int bank = components.getBankIndices()[0];
+			final byte[] data = bytes.getData(bank);
+			final int pixelStride = components.getPixelStride();
+			final int scanlineStride = components.getScanlineStride();
+			final int origin = bytes.getOffsets()[bank] + y0 * scanlineStride + x0 * pixelStride;
+			final int[] bandOffsets = components.getBandOffsets();
+			final int redOffset = bandOffsets[0];
+			final int greenOffset = bandOffsets[1];
+			final int blueOffset = bandOffsets[2];
+			final byte red = (byte) key.getRed();
+			final byte green = (byte) key.getGreen();
+			final byte blue = (byte) key.getBlue();
+			forEachRow(bitmask, y -> {
+				final int line = origin + y * scanlineStride;
+				for (int stripe = 0, x = 0; x < width; stripe++) {
+					long word = 0;
+					for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+						final int pixel = line + x * pixelStride;
+						if (data[pixel + redOffset] != red || data[pixel + greenOffset] != green
+								|| data[pixel + blueOffset] != blue) {
+							word |= 1L << bit;
+						}
+					}
+					bitmask.setWord(stripe, y, word);
+				}
+			});
+		} else if (colorModel instanceof IndexColorModel indexed && dataBuffer instanceof DataBufferByte bytes
+				&& (sampleModel instanceof MultiPixelPackedSampleModel
+						|| sampleModel instanceof ComponentSampleModel && sampleModel.getNumBands() == 1)) {
+			// Look up once which palette entries are the key.
+			final boolean[] opaque = new boolean[indexed.getMapSize()];
+			for (int i = 0; i < opaque.length; i++) {
+				opaque[i] = !(indexed.getRed(i) == key.getRed() && indexed.getGreen(i) == key.getGreen()
+						&& indexed.getBlue(i) == key.getBlue());
+			}
+			final byte[] data = bytes.getData();
+			if (sampleModel instanceof MultiPixelPackedSampleModel packed) {
+				final int bitsPerPixel = packed.getPixelBitStride();
+				final int pixelMask = (1 << bitsPerPixel) - 1;
+				final int scanlineStride = packed.getScanlineStride();
+				final int origin = bytes.getOffset() + y0 * scanlineStride;
+				final int firstBit = packed.getDataBitOffset() + x0 * bitsPerPixel;
+				forEachRow(bitmask, y -> {
+					final int line = origin + y * scanlineStride;
+					for (int stripe = 0, x = 0; x < width; stripe++) {
+						long word = 0;
+						for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+							final int pixelBit = firstBit + x * bitsPerPixel;
+							// Pixels are packed starting at the most significant bit.
+							final int index = data[line + (pixelBit >> 3)] >> (8 - bitsPerPixel - (pixelBit & 7)) & pixelMask;
+							if (index < opaque.length && opaque[index]) {
+								word |= 1L << bit;
+							}
+						}
+						bitmask.setWord(stripe, y, word);
+					}
+				});
+			} else {
+				final ComponentSampleModel components = (ComponentSampleModel) sampleModel;
+				final int pixelStride = components.getPixelStride();
+				final int scanlineStride = components.getScanlineStride();
+				final int origin = bytes.getOffset() + components.getOffset(x0, y0, 0);
+				forEachRow(bitmask, y -> {
+					final int line = origin + y * scanlineStride;
+					for (int stripe = 0, x = 0; x < width; stripe++) {
+						long word = 0;
+						for (int bit = 0, end = Math.min(x + Long.SIZE, width); x < end; x++, bit++) {
+							final int index = data[line + x * pixelStride] & 0xFF;
+							if (index < opaque.length && opaque[index]) {
+								word |= 1L << bit;
+							}
+						}
+						bitmask.setWord(stripe, y, word);
+					}
+				});
+			}
+		} else {
+			// Reuse one pixel array for all pixels.
+			Object pixel = null;
+			for (int x = 0; x < image.getWidth(); x++) {
+				for (int y = 0; y < image.getHeight(); y++) {
+					pixel = raster.getDataElements(raster.getMinX() + x, raster.getMinY() + y, pixel);
+					if (!(colorModel.getBlue(pixel) == key.getBlue() && colorModel.getRed(pixel) == key.getRed()
+							&& colorModel.getGreen(pixel) == key.getGreen())) {
+						bitmask.setBit(x, y);
+					}
 				}
 			}
 		}
 		return bitmask;
 	}
 
+	private static boolean allInBank(final int[] bankIndices, final int bank) {
+		for (final int bankIndex : bankIndices) {
+			if (bankIndex != bank) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Create a bitmask with bits set for every character in the source string
 	 * that matches oneBitCharacter.
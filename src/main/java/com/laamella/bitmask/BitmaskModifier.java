@@ -1,112 +1,408 @@
 package com.laamella.bitmask;
 
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToLongFunction;
+
 /**
  * Various drawing tools that were separated from Bitmask to prevent bloat.
  */
 public final class BitmaskModifier {
+	// Columns of stripes of the output of convolve that are not split further.
+	private static final int CONVOLVE_STRIPES_PER_TASK = 4;
+
 	private BitmaskModifier() {
 		// can't instantiate
 	}
 
-	private static final int AND = 0;
-	private static final int ERASE = 1;
-
-	private static void apply(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset, final int operation) {
-		if (!a.overlapsBoundingRectangleOf(b, xOffset, yOffset)) {
-			return;
-		}
-		// Find out what area in this bitmask will be combined with b
-		int left = xOffset;
-		int right = xOffset + b.getWidth();
-		int top = yOffset;
-		int bottom = yOffset + b.getHeight();
-		if (left < 0) {
-			left = 0;
-		}
-		if (right > a.getWidth()) {
-			right = a.getWidth();
-		}
-		if (top < 0) {
-			top = 0;
-		}
-		if (bottom > a.getHeight()) {
-			bottom = a.getHeight();
-		}
-		for (int x = left; x < right; x++) {
-			for (int y = top; y < bottom; y++) {
-				final boolean aBit = a.getBit(x, y);
-				final boolean bBit = b.getBit(x - xOffset, y - yOffset);
-				boolean resultBit = switch (operation) {
-					case AND -> aBit | bBit;
-					case ERASE -> aBit ^ bBit;
-					default -> throw new IllegalArgumentException("Don't know operation " + operation);
-				};
-				if (resultBit) {
-					a.setBit(x, y);
-				} else {
-					a.clearBit(x, y);
-				}
-			}
-		}
-	}
-
 	/**
 	 * Draws mask b onto mask a (bitwise OR). Can be used to compose large (game
 	 * background?) mask from several submasks, which may speed up the testing.
 	 */
 	public static void draw(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
-		apply(a, b, xOffset, yOffset, AND);
+		a.combine(b, xOffset, yOffset, a, Bitmask.OR);
 	}
 
 	/**
-	 * Erase any set bits on this bitmask that are set in bitmask b.
+	 * Erase any set bits on this bitmask that are set in bitmask b (bitwise
+	 * AND NOT).
 	 */
 	public static void erase(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
-		apply(a, b, xOffset, yOffset, ERASE);
+		a.combine(b, xOffset, yOffset, a, Bitmask.AND_NOT);
+	}
+
+	/**
+	 * Like {@link #draw(Bitmask, Bitmask, int, int)}, but safe to call from
+	 * several threads drawing onto the same mask a at the same time. Query a
+	 * only after all drawing threads are done.
+	 */
+	public static void drawAtomic(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+		a.combineAtomic(b, xOffset, yOffset, Bitmask.OR);
+	}
+
+	/**
+	 * Like {@link #erase(Bitmask, Bitmask, int, int)}, but safe to call from
+	 * several threads changing the same mask a at the same time.
+	 */
+	public static void eraseAtomic(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+		a.combineAtomic(b, xOffset, yOffset, Bitmask.AND_NOT);
+	}
+
+	/**
+	 * Flips the bits on mask a that are set in mask b (bitwise XOR).
+	 */
+	public static void xor(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+		a.combine(b, xOffset, yOffset, a, Bitmask.XOR);
+	}
+
+	/**
+	 * Keeps only the bits on mask a that are also set in mask b (bitwise AND).
+	 * Everything outside of b is cleared.
+	 */
+	public static void and(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+		a.combine(b, xOffset, yOffset, a, Bitmask.AND);
+	}
+
+	/**
+	 * Crops a mask to the smallest rectangle that contains all of its set
+	 * bits. If no bits are set, a clear 1x1 mask at (0,0) is returned.
+	 */
+	public static TrimmedBitmask trim(final Bitmask source) {
+		final Rectangle bounds = source.getTightBounds();
+		if (bounds.isEmpty()) {
+			return new TrimmedBitmask(new Bitmask(1, 1), 0, 0);
+		}
+		final Bitmask trimmed = new Bitmask(bounds.width, bounds.height);
+		draw(trimmed, source, -bounds.x, -bounds.y);
+		return new TrimmedBitmask(trimmed, bounds.x, bounds.y);
 	}
 
 	/**
 	 * Return a new scaled Bitmask, with dimensions w x h. The algorithm makes
 	 * no attempt at smoothing the result. If either w or h is less than one, a
 	 * clear 1x1 mask is returned.
+	 * <p>
+	 * Pixel (x,y) comes from source pixel ((x + 0.5) * source width / w,
+	 * (y + 0.5) * source height / h), rounded down. The scale is done a word at
+	 * a time: the source column of every pixel is looked up once, and a row of
+	 * words that comes from the same source row as the row above it is copied.
+	 * Doubling and halving the width shift whole words.
 	 */
 	public static Bitmask scale(final Bitmask source, final int scaledWidth, final int scaledHeight) {
 		if (scaledWidth < 1 || scaledHeight < 1) {
 			return new Bitmask(1, 1);
 		}
 		final Bitmask newMask = new Bitmask(scaledWidth, scaledHeight);
-		final double xFactor = (double) source.getWidth() / scaledWidth;
-		final double yFactor = (double) source.getHeight() / scaledHeight;
-		for (int x = 0; x < scaledWidth; x++) {
-			for (int y = 0; y < scaledHeight; y++) {
-				if (source.getBit((int) ((x + 0.5) * xFactor), (int) ((y + 0.5) * yFactor))) {
-					newMask.setBit(x, y);
-				}
+		final int sourceHeight = source.getHeight();
+		final double yFactor = (double) sourceHeight / scaledHeight;
+		final int[] rows = new int[scaledHeight];
+		for (int y = 0; y < scaledHeight; y++) {
+			rows[y] = (int) ((y + 0.5) * yFactor);
+		}
+		final int stripes = (scaledWidth - 1) / Long.SIZE + 1;
+		if (scaledWidth == source.getWidth() * 2) {
+			for (int stripe = 0; stripe < stripes; stripe++) {
+				final int sourceStripe = stripe / 2;
+				final int half = stripe % 2 * 32;
+				scaleRows(newMask, stripe, rows, y -> doubleBits((int) (source.getWord(sourceStripe, y) >>> half)));
+			}
+		} else if (scaledWidth * 2 == source.getWidth()) {
+			final int sourceStripes = (source.getWidth() - 1) / Long.SIZE + 1;
+			for (int stripe = 0; stripe < stripes; stripe++) {
+				final int sourceStripe = stripe * 2;
+				// The odd columns, like the general case picks for a factor of 2.
+				scaleRows(newMask, stripe, rows, y -> oddBits(source.getWord(sourceStripe, y))
+						| (sourceStripe + 1 < sourceStripes ? oddBits(source.getWord(sourceStripe + 1, y)) << 32 : 0));
+			}
+		} else {
+			final double xFactor = (double) source.getWidth() / scaledWidth;
+			final int[] columns = new int[scaledWidth];
+			for (int x = 0; x < scaledWidth; x++) {
+				columns[x] = (int) ((x + 0.5) * xFactor);
+			}
+			for (int stripe = 0; stripe < stripes; stripe++) {
+				final int first = stripe * Long.SIZE;
+				final int last = Math.min(first + Long.SIZE, scaledWidth);
+				scaleRows(newMask, stripe, rows, y -> {
+					long word = 0;
+					for (int x = first; x < last; x++) {
+						word |= (source.getWord(columns[x] / Long.SIZE, y) >>> columns[x] & 1) << x;
+					}
+					return word;
+				});
 			}
 		}
 		return newMask;
 	}
 
+	/**
+	 * Returns a new mask with source rotated by angle radians around its
+	 * center. Like Graphics2D.rotate, a positive angle turns clockwise on the
+	 * screen, where y points down. The new mask is just large enough to hold
+	 * the rotated source, and has the same center: draw it at ((source width -
+	 * width) / 2, (source height - height) / 2) relative to where the source
+	 * would be.
+	 * <p>
+	 * Every pixel takes the source pixel under its center, rotated back
+	 * (nearest neighbour). Quarter turns are exact. The rows of the new mask
+	 * only visit the columns that fall inside the set bits of the source.
+	 */
+	public static Bitmask rotate(final Bitmask source, final double angle) {
+		final double turn = Math.IEEEremainder(angle, 2 * Math.PI);
+		final double quarters = turn / (Math.PI / 2);
+		double cos = Math.cos(turn);
+		double sin = Math.sin(turn);
+		if (Math.abs(quarters - Math.rint(quarters)) < 1e-9) {
+			final int quarter = Math.floorMod(Math.round(quarters), 4);
+			cos = quarter == 0 ? 1 : quarter == 2 ? -1 : 0;
+			sin = quarter == 1 ? 1 : quarter == 3 ? -1 : 0;
+		}
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		final int rotatedWidth = Math.max((int) Math.ceil(Math.abs(width * cos) + Math.abs(height * sin) - 1e-9), 1);
+		final int rotatedHeight = Math.max((int) Math.ceil(Math.abs(width * sin) + Math.abs(height * cos) - 1e-9), 1);
+		final Bitmask rotated = new Bitmask(rotatedWidth, rotatedHeight);
+		final Rectangle bounds = source.getTightBounds();
+		if (bounds.isEmpty()) {
+			return rotated;
+		}
+		for (int y = 0; y < rotatedHeight; y++) {
+			// The source position of the center of pixel (0, y).
+			final double dx = 0.5 - rotatedWidth / 2.0;
+			final double dy = y + 0.5 - rotatedHeight / 2.0;
+			final double rowX = cos * dx + sin * dy + width / 2.0;
+			final double rowY = -sin * dx + cos * dy + height / 2.0;
+			// Going right, the source position moves by (cos, -sin). Only visit the columns inside the bounds.
+			double from = 0;
+			double to = rotatedWidth - 1;
+			if (cos != 0) {
+				final double a = (bounds.x - rowX) / cos;
+				final double b = (bounds.x + bounds.width - rowX) / cos;
+				from = Math.max(from, Math.min(a, b));
+				to = Math.min(to, Math.max(a, b));
+			} else if (rowX < bounds.x || rowX >= bounds.x + bounds.width) {
+				continue;
+			}
+			if (sin != 0) {
+				final double a = (rowY - bounds.y) / sin;
+				final double b = (rowY - bounds.y - bounds.height) / sin;
+				from = Math.max(from, Math.min(a, b));
+				to = Math.min(to, Math.max(a, b));
+			} else if (rowY < bounds.y || rowY >= bounds.y + bounds.height) {
+				continue;
+			}
+			// Rounding can put a column on the wrong side of an edge, so the loop checks every pixel anyway.
+			final int first = Math.max((int) Math.floor(from) - 1, 0);
+			final int last = Math.min((int) Math.ceil(to) + 1, rotatedWidth - 1);
+			for (int stripe = first / Long.SIZE; stripe <= last / Long.SIZE; stripe++) {
+				long word = 0;
+				final int end = Math.min(last, stripe * Long.SIZE + Long.SIZE - 1);
+				for (int x = Math.max(first, stripe * Long.SIZE); x <= end; x++) {
+					final int sourceX = (int) Math.floor(rowX + x * cos);
+					final int sourceY = (int) Math.floor(rowY - x * sin);
+					if (sourceX >= 0 && sourceX < width && sourceY >= 0 && sourceY < height) {
+						word |= (source.getWord(sourceX / Long.SIZE, sourceY) >>> sourceX & 1) << x;
+					}
+				}
+				if (word != 0) {
+					rotated.setWord(stripe, y, word);
+				}
+			}
+		}
+		return rotated;
+	}
+
+	/*
+	 * Writes the words of a stripe of a scaled mask, making a word only once
+	 * for every run of rows from the same source row.
+	 */
+	private static void scaleRows(final Bitmask scaled, final int stripe, final int[] rows,
+			final IntToLongFunction row) {
+		long word = 0;
+		for (int y = 0; y < rows.length; y++) {
+			if (y == 0 || rows[y] != rows[y - 1]) {
+				word = row.applyAsLong(rows[y]);
+			}
+			if (word != 0) {
+				scaled.setWord(stripe, y, word);
+			}
+		}
+	}
+
+	// Spreads 32 bits over 64 bits, every bit twice.
+	private static long doubleBits(final int bits) {
+		long word = bits & 0xffffffffL;
+		word = (word | word << 16) & 0x0000ffff0000ffffL;
+		word = (word | word << 8) & 0x00ff00ff00ff00ffL;
+		word = (word | word << 4) & 0x0f0f0f0f0f0f0f0fL;
+		word = (word | word << 2) & 0x3333333333333333L;
+		word = (word | word << 1) & 0x5555555555555555L;
+		return word | word << 1;
+	}
+
+	// Packs the 32 odd bits of word into the low 32 bits.
+	private static long oddBits(final long word) {
+		long bits = word >>> 1 & 0x5555555555555555L;
+		bits = (bits | bits >>> 1) & 0x3333333333333333L;
+		bits = (bits | bits >>> 2) & 0x0f0f0f0f0f0f0f0fL;
+		bits = (bits | bits >>> 4) & 0x00ff00ff00ff00ffL;
+		bits = (bits | bits >>> 8) & 0x0000ffff0000ffffL;
+		return (bits | bits >>> 16) & 0x00000000ffffffffL;
+	}
+
 	/**
 	 * Convolve b into a, drawing the output into o, shifted by offset. If
 	 * offset is 0, then the (x,y) bit will be set if and only if
-	 * Bitmask_overlap(a, b, x - b->w - 1, y - b->h - 1) returns true.
+	 * a.overlaps(b, x - b.getWidth() + 1, y - b.getHeight() + 1) returns true.
+	 * Bits of o are only set, never cleared.
+	 * <p>
+	 * With a the level and b a unit, o is the map of every place the unit
+	 * can't stand: the configuration space.
 	 * 
 	 * <pre>
 	 * Modifies bits o[xoffset ... xoffset + a->w + b->w - 1)
 	 *                  [yoffset ... yoffset + a->h + b->h - 1).
 	 * </pre>
 	 */
-	public static void convolve(final Bitmask a, final Bitmask b, final Bitmask o, int xoffset, int yoffset) {
-		xoffset += b.getWidth() - 1;
-		yoffset += b.getHeight() - 1;
-		for (int y = 0; y < b.getHeight(); y++) {
-			for (int x = 0; x < b.getWidth(); x++) {
-				if (b.getBit(x, y)) {
-					// FIXME not sure what this is supposed to do
-					draw(a, o, xoffset - x, yoffset - y);
-				}
+	public static void convolve(final Bitmask a, final Bitmask b, final Bitmask o, final int xoffset,
+			final int yoffset) {
+		convolve(a, b, o, xoffset, yoffset, null);
+	}
+
+	/**
+	 * Like {@link #convolve(Bitmask, Bitmask, Bitmask, int, int)}, but splits
+	 * o into columns of stripes that are convolved on pool. The columns are
+	 * drawn into o with atomic writes, so query o only after this returns.
+	 * 
+	 * @param pool
+	 *            the pool to spread the work over, or null to do all work on
+	 *            this thread.
+	 */
+	public static void convolve(final Bitmask a, final Bitmask b, final Bitmask o, final int xoffset,
+			final int yoffset, final ForkJoinPool pool) {
+		final int stripes = (o.getWidth() - 1) / Long.SIZE + 1;
+		if (pool == null || stripes <= CONVOLVE_STRIPES_PER_TASK) {
+			convolveRows(a, b, o, xoffset, yoffset);
+			return;
+		}
+		pool.invoke(new ConvolveTask(a, b, o, xoffset, yoffset, 0, stripes));
+	}
+
+	/*
+	 * Convolves with word level draws instead of one draw of a for every set
+	 * bit of b. Every run of equal rows of b is handled at once: a is spread
+	 * sideways by the runs of set bits in the row, and then down by the amount
+	 * of rows. Spreading by n pixels takes log2(n) draws of a mask onto itself.
+	 */
+	private static void convolveRows(final Bitmask a, final Bitmask b, final Bitmask o, final int xoffset,
+			final int yoffset) {
+		final Rectangle bounds = b.getTightBounds();
+		final int bottom = bounds.y + bounds.height;
+		for (int row = bounds.y; row < bottom;) {
+			int next = row + 1;
+			while (next < bottom && sameRow(b, row, next)) {
+				next++;
+			}
+			final Bitmask spread = spreadRow(a, b, row);
+			if (spread != null) {
+				draw(o, dilate(spread, next - row, false), xoffset, yoffset + b.getHeight() - next);
+			}
+			row = next;
+		}
+	}
+
+	private static boolean sameRow(final Bitmask b, final int row, final int otherRow) {
+		for (int stripe = 0; stripe <= (b.getWidth() - 1) / Long.SIZE; stripe++) {
+			if (b.getWord(stripe, row) != b.getWord(stripe, otherRow)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns a drawn at b.w - 1 - x for every set bit x in row of b, or null
+	 * if the row has no set bits.
+	 */
+	private static Bitmask spreadRow(final Bitmask a, final Bitmask b, final int row) {
+		Bitmask spread = null;
+		for (int x = 0; x < b.getWidth(); x++) {
+			if (!b.getBit(x, row)) {
+				continue;
+			}
+			final int first = x;
+			while (x + 1 < b.getWidth() && b.getBit(x + 1, row)) {
+				x++;
+			}
+			if (spread == null) {
+				spread = new Bitmask(a.getWidth() + b.getWidth() - 1, a.getHeight());
+			}
+			draw(spread, dilate(a, x - first + 1, true), b.getWidth() - 1 - x, 0);
+		}
+		return spread;
+	}
+
+	/*
+	 * Returns mask drawn at all distances from 0 up to length, to the right or
+	 * down.
+	 */
+	private static Bitmask dilate(final Bitmask mask, final int length, final boolean sideways) {
+		final Bitmask dilated = sideways ? new Bitmask(mask.getWidth() + length - 1, mask.getHeight())
+				: new Bitmask(mask.getWidth(), mask.getHeight() + length - 1);
+		draw(dilated, mask, 0, 0);
+		for (int covered = 1; covered < length;) {
+			final int step = Math.min(covered, length - covered);
+			// Drawing a mask onto itself would smear it, so draw a copy.
+			draw(dilated, new Bitmask(dilated), sideways ? step : 0, sideways ? 0 : step);
+			covered += step;
+		}
+		return dilated;
+	}
+
+	private static final class ConvolveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Bitmask a;
+		private final Bitmask b;
+		private final Bitmask o;
+		private final int xoffset;
+		private final int yoffset;
+		private final int fromStripe;
+		private final int toStripe;
+
+		ConvolveTask(final Bitmask a, final Bitmask b, final Bitmask o, final int xoffset, final int yoffset,
+				final int fromStripe, final int toStripe) {
+			this.a = a;
+			this.b = b;
+			this.o = o;
+			this.xoffset = xoffset;
+			this.yoffset = yoffset;
+			this.fromStripe = fromStripe;
+			this.toStripe = toStripe;
+		}
+
+		@Override
+		protected void compute() {
+			if (toStripe - fromStripe > CONVOLVE_STRIPES_PER_TASK) {
+				final int middle = (fromStripe + toStripe) >>> 1;
+				invokeAll(new ConvolveTask(a, b, o, xoffset, yoffset, fromStripe, middle),
+						new ConvolveTask(a, b, o, xoffset, yoffset, middle, toStripe));
+				return;
+			}
+			// Convolve the columns of a that can reach these columns of o.
+			final int left = fromStripe * Long.SIZE;
+			final int right = Math.min(toStripe * Long.SIZE, o.getWidth());
+			final int sliceX = left - xoffset - b.getWidth() + 1;
+			final Bitmask slice = new Bitmask(right - left + b.getWidth() - 1, a.getHeight());
+			draw(slice, a, -sliceX, 0);
+			if (slice.getTightBounds().isEmpty()) {
+				return;
 			}
+			final Bitmask column = new Bitmask(right - left, o.getHeight());
+			convolveRows(slice, b, column, sliceX + xoffset - left, yoffset);
+			// Columns of different tasks have no words in common, but they share the caches of o.
+			drawAtomic(o, column, left, 0);
 		}
 	}
 }
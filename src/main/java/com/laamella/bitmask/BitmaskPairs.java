@@ -0,0 +1,144 @@
+package com.laamella.bitmask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tests positioned masks against each other, or against a second set of
+ * positioned masks, spread over a ForkJoinPool. Mask i is at (xs[i], ys[i]).
+ * <p>
+ * The pairs are cut into strips of rows of the pair matrix, which the pool
+ * steals from each other. Every strip keeps its own contacts in order, and
+ * the strips are joined in order, so the contact list is the same for every
+ * amount of threads.
+ */
+public final class BitmaskPairs {
+	// Rows of the pair matrix that are not split further.
+	private static final int ROWS_PER_TASK = 4;
+
+	private BitmaskPairs() {
+		// can't instantiate
+	}
+
+	/**
+	 * Two overlapping masks, and a pixel where they overlap, in the
+	 * coordinates shared by both.
+	 */
+	public record Contact(int first, int second, int x, int y) {
+	}
+
+	/**
+	 * Finds all overlapping pairs among the first count masks. Null masks
+	 * never overlap.
+	 *
+	 * @param pool
+	 *            the pool to spread the work over, or null to do all work on
+	 *            this thread.
+	 * @return the contacts, ordered by first and then by second, with first <
+	 *         second.
+	 */
+	public static List<Contact> findContacts(final Bitmask[] masks, final int[] xs, final int[] ys, final int count,
+			final ForkJoinPool pool) {
+		return find(new PairTask(masks, xs, ys, masks, xs, ys, count, true, 0, count), pool);
+	}
+
+	/**
+	 * Finds all overlapping pairs of one of the first count masks and one of
+	 * the first otherCount other masks. Null masks never overlap.
+	 *
+	 * @param pool
+	 *            the pool to spread the work over, or null to do all work on
+	 *            this thread.
+	 * @return the contacts, ordered by first and then by second, where first is
+	 *         an index in masks and second an index in otherMasks.
+	 */
+	public static List<Contact> findContacts(final Bitmask[] masks, final int[] xs, final int[] ys, final int count,
+			final Bitmask[] otherMasks, final int[] otherXs, final int[] otherYs, final int otherCount,
+			final ForkJoinPool pool) {
+		return find(new PairTask(masks, xs, ys, otherMasks, otherXs, otherYs, otherCount, false, 0, count), pool);
+	}
+
+	private static List<Contact> find(final PairTask task, final ForkJoinPool pool) {
+		if (pool == null) {
+			final List<Contact> contacts = new ArrayList<>();
+			task.findRows(contacts);
+			return contacts;
+		}
+		return pool.invoke(task);
+	}
+
+	private static final class PairTask extends RecursiveTask<List<Contact>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Bitmask[] masks;
+		private final int[] xs;
+		private final int[] ys;
+		private final Bitmask[] otherMasks;
+		private final int[] otherXs;
+		private final int[] otherYs;
+		private final int otherCount;
+		// Whether the other masks are the masks themselves, so only pairs above the diagonal count.
+		private final boolean self;
+		private final int fromRow;
+		private final int toRow;
+
+		PairTask(final Bitmask[] masks, final int[] xs, final int[] ys, final Bitmask[] otherMasks,
+				final int[] otherXs, final int[] otherYs, final int otherCount, final boolean self, final int fromRow,
+				final int toRow) {
+			this.masks = masks;
+			this.xs = xs;
+			this.ys = ys;
+			this.otherMasks = otherMasks;
+			this.otherXs = otherXs;
+			this.otherYs = otherYs;
+			this.otherCount = otherCount;
+			this.self = self;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected List<Contact> compute() {
+			if (toRow - fromRow > ROWS_PER_TASK) {
+				final int middle = (fromRow + toRow) >>> 1;
+				final PairTask top = new PairTask(masks, xs, ys, otherMasks, otherXs, otherYs, otherCount, self,
+						fromRow, middle);
+				final PairTask bottom = new PairTask(masks, xs, ys, otherMasks, otherXs, otherYs, otherCount, self,
+						middle, toRow);
+				bottom.fork();
+				final List<Contact> contacts = top.compute();
+				contacts.addAll(bottom.join());
+				return contacts;
+			}
+			final List<Contact> contacts = new ArrayList<>();
+			findRows(contacts);
+			return contacts;
+		}
+
+		void findRows(final List<Contact> contacts) {
+			for (int first = fromRow; first < toRow; first++) {
+				final Bitmask a = masks[first];
+				if (a == null) {
+					continue;
+				}
+				final int x = xs[first];
+				final int y = ys[first];
+				for (int second = self ? first + 1 : 0; second < otherCount; second++) {
+					final Bitmask b = otherMasks[second];
+					if (b == null) {
+						continue;
+					}
+					final int xOffset = otherXs[second] - x;
+					final int yOffset = otherYs[second] - y;
+					final long pos = a.overlapPos(b, xOffset, yOffset);
+					if (pos != Bitmask.NO_OVERLAP) {
+						contacts.add(new Contact(first, second, x + Bitmask.overlapPosX(pos),
+								y + Bitmask.overlapPosY(pos)));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.laamella.bitmask;
+
+import java.io.Serializable;
+
+/**
+ * The words of a {@link Bitmask}, stored stripe by stripe: first all rows of
+ * the first 64 columns, then all rows of the next 64 columns, and so on.
+ * <p>
+ * The overlap kernels work against this class, so they don't care where the
+ * words live. When both masks are a {@link HeapStorage}, they use its array
+ * directly.
+ */
+abstract sealed class BitmaskStorage implements Serializable permits HeapStorage, BufferStorage {
+	private static final long serialVersionUID = 1L;
+
+	abstract int size();
+
+	abstract long get(int index);
+
+	abstract void set(int index, long word);
+
+	/**
+	 * Sets the bits of word in the word at index, atomically, so no bits set
+	 * by other threads at the same time get lost.
+	 */
+	abstract void orAtomic(int index, long word);
+
+	/**
+	 * Clears the bits of word in the word at index, atomically.
+	 */
+	abstract void andNotAtomic(int index, long word);
+
+	void fill(final int from, final int to, final long word) {
+		for (int i = from; i < to; i++) {
+			set(i, word);
+		}
+	}
+}
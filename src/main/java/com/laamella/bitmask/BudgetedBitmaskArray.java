@@ -0,0 +1,87 @@
+package com.laamella.bitmask;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The slots of the mask caches: an array of masks that is filled lazily by
+ * many threads at once, while the masks it keeps stay within a memory budget.
+ * Kept masks are frozen, because every thread gets the same instance.
+ */
+final class BudgetedBitmaskArray {
+	private final AtomicReferenceArray<Bitmask> slots;
+	private final AtomicLong budget;
+
+	/**
+	 * @param memoryBudget
+	 *            the amount of bytes the kept masks may take.
+	 */
+	BudgetedBitmaskArray(final int length, final long memoryBudget) {
+		this.slots = new AtomicReferenceArray<>(length);
+		this.budget = new AtomicLong(memoryBudget);
+	}
+
+	int length() {
+		return slots.length();
+	}
+
+	/**
+	 * @return the mask in slot, or null when there is none yet.
+	 */
+	Bitmask get(final int slot) {
+		return slots.get(slot);
+	}
+
+	/**
+	 * Puts a mask in slot without taking from the budget or freezing it, like
+	 * the original mask of a cache.
+	 */
+	void setUncounted(final int slot, final Bitmask bitmask) {
+		slots.set(slot, bitmask);
+	}
+
+	/**
+	 * @return the amount of slots that hold a mask.
+	 */
+	int count() {
+		int count = 0;
+		for (int slot = 0; slot < slots.length(); slot++) {
+			if (slots.get(slot) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Takes bytes from the budget.
+	 *
+	 * @return false, taking nothing, when there is not enough left.
+	 */
+	boolean reserve(final long bytes) {
+		if (budget.get() < bytes) {
+			return false;
+		}
+		if (budget.addAndGet(-bytes) < 0) {
+			budget.addAndGet(bytes);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Freezes bitmask and puts it in slot, after {@link #reserve(long)}
+	 * returned true for its bytes.
+	 *
+	 * @return the mask that ended up in slot, which is another thread's when
+	 *         it was first. The bytes are given back in that case.
+	 */
+	Bitmask keep(final int slot, final Bitmask bitmask, final long bytes) {
+		bitmask.freeze();
+		if (!slots.compareAndSet(slot, null, bitmask)) {
+			budget.addAndGet(bytes);
+			return slots.get(slot);
+		}
+		return bitmask;
+	}
+}
@@ -0,0 +1,85 @@
+package com.laamella.bitmask;
+
+import java.io.ObjectStreamException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Storage in a LongBuffer, usually a direct one so the words are outside of
+ * the Java heap. The garbage collector never has to scan or copy them.
+ * <p>
+ * The atomic operations go through the bytes under the LongBuffer, so they
+ * need a direct buffer with the words aligned to 8 bytes.
+ */
+final class BufferStorage extends BitmaskStorage {
+	private static final long serialVersionUID = 1L;
+
+	private static final ByteBuffer RELEASED = ByteBuffer.allocate(0);
+	private static final VarHandle LITTLE_ENDIAN_WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle BIG_ENDIAN_WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.BIG_ENDIAN);
+
+	// Buffers can't be serialized. writeReplace serializes a HeapStorage instead.
+	private transient ByteBuffer bytes;
+	private transient LongBuffer words;
+	private transient VarHandle atomicWords;
+	private final int size;
+
+	/**
+	 * @param bytes
+	 *            the words, in the byte order of the buffer.
+	 */
+	BufferStorage(final ByteBuffer bytes) {
+		this.bytes = bytes;
+		this.words = bytes.asLongBuffer();
+		this.atomicWords = bytes.order() == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN_WORDS : BIG_ENDIAN_WORDS;
+		this.size = words.capacity();
+	}
+
+	@Override
+	int size() {
+		return size;
+	}
+
+	@Override
+	long get(final int index) {
+		return words.get(index);
+	}
+
+	@Override
+	void set(final int index, final long word) {
+		words.put(index, word);
+	}
+
+	@Override
+	void orAtomic(final int index, final long word) {
+		atomicWords.getAndBitwiseOr(bytes, index * Long.BYTES, word);
+	}
+
+	@Override
+	void andNotAtomic(final int index, final long word) {
+		atomicWords.getAndBitwiseAnd(bytes, index * Long.BYTES, ~word);
+	}
+
+	/**
+	 * Lets go of the buffer. Every access after this throws an
+	 * IndexOutOfBoundsException.
+	 */
+	void release() {
+		bytes = RELEASED;
+		words = RELEASED.asLongBuffer();
+	}
+
+	/**
+	 * Off heap storage is serialized as heap storage.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		final long[] copy = new long[size];
+		words.get(0, copy);
+		return new HeapStorage(copy);
+	}
+}
@@ -0,0 +1,360 @@
+package com.laamella.bitmask;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A world of positioned bitmasks ("bodies") that finds out which bodies
+ * collide, without testing every body against every other body.
+ * <p>
+ * The bodies are sorted into a uniform grid of square cells. Only bodies that
+ * share a cell are candidates for a collision, and only candidates are tested
+ * with {@link Bitmask#overlaps(Bitmask, int, int)}. The grid is a hash table
+ * of cell coordinates, so the world has no bounds, and moving a body only
+ * touches the cells it enters or leaves.
+ * <p>
+ * Bodies are identified by the number returned from
+ * {@link #add(Bitmask, int, int)}. Numbers of removed bodies are reused.
+ * <p>
+ * A good cell size is around the size of a typical body. Bodies much larger
+ * than a cell work, but they are stored in every cell they cover.
+ */
+public final class CollisionWorld {
+	/** Receives the pairs of colliding bodies. */
+	@FunctionalInterface
+	public interface CollisionListener {
+		/**
+		 * Called for every pair of colliding bodies. body is always smaller
+		 * than otherBody. The listener must not modify the world.
+		 */
+		void collision(int body, int otherBody);
+	}
+
+	private final int cellSize;
+
+	// Bodies, by body number. A body is free when its mask is null.
+	private Bitmask[] masks = new Bitmask[16];
+	private int[] xs = new int[16];
+	private int[] ys = new int[16];
+	// The range of cells a body is in, inclusive.
+	private int[] minCellXs = new int[16];
+	private int[] minCellYs = new int[16];
+	private int[] maxCellXs = new int[16];
+	private int[] maxCellYs = new int[16];
+	private int bodyCount = 0;
+	private int highestBody = -1;
+	private int[] freeBodies = new int[16];
+	private int freeBodyCount = 0;
+
+	// Cells, in an open addressing hash table. A slot is free when its bodies are null.
+	private long[] cellKeys = new long[64];
+	private int[][] cellBodies = new int[64][];
+	private int[] cellCounts = new int[64];
+	private int usedCells = 0;
+
+	/**
+	 * @param cellSize
+	 *            the width and height of a grid cell in pixels.
+	 */
+	public CollisionWorld(final int cellSize) {
+		if (cellSize < 1) {
+			throw new IllegalArgumentException("Cell size should be at least 1, but it is " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Adds a body to the world.
+	 *
+	 * @return the number that identifies the body.
+	 */
+	public int add(final Bitmask mask, final int x, final int y) {
+		final int body;
+		if (freeBodyCount > 0) {
+			body = freeBodies[--freeBodyCount];
+		} else {
+			body = ++highestBody;
+			if (body == masks.length) {
+				growBodies();
+			}
+		}
+		bodyCount++;
+		place(body, mask, x, y);
+		for (int cellX = minCellXs[body]; cellX <= maxCellXs[body]; cellX++) {
+			for (int cellY = minCellYs[body]; cellY <= maxCellYs[body]; cellY++) {
+				addToCell(cellX, cellY, body);
+			}
+		}
+		return body;
+	}
+
+	/**
+	 * Removes a body from the world. Its number may be returned by a later
+	 * call to add.
+	 */
+	public void remove(final int body) {
+		checkBody(body);
+		for (int cellX = minCellXs[body]; cellX <= maxCellXs[body]; cellX++) {
+			for (int cellY = minCellYs[body]; cellY <= maxCellYs[body]; cellY++) {
+				removeFromCell(cellX, cellY, body);
+			}
+		}
+		masks[body] = null;
+		bodyCount--;
+		if (freeBodyCount == freeBodies.length) {
+			freeBodies = Arrays.copyOf(freeBodies, freeBodyCount * 2);
+		}
+		freeBodies[freeBodyCount++] = body;
+	}
+
+	/**
+	 * Moves a body to a new position.
+	 */
+	public void move(final int body, final int x, final int y) {
+		checkBody(body);
+		update(body, masks[body], x, y);
+	}
+
+	/**
+	 * Gives a body a new mask and position. Use this when the mask of a body
+	 * was replaced by one of a different size.
+	 */
+	public void update(final int body, final Bitmask mask, final int x, final int y) {
+		checkBody(body);
+		final int oldMinCellX = minCellXs[body];
+		final int oldMinCellY = minCellYs[body];
+		final int oldMaxCellX = maxCellXs[body];
+		final int oldMaxCellY = maxCellYs[body];
+		place(body, mask, x, y);
+		final int minCellX = minCellXs[body];
+		final int minCellY = minCellYs[body];
+		final int maxCellX = maxCellXs[body];
+		final int maxCellY = maxCellYs[body];
+		if (minCellX == oldMinCellX && minCellY == oldMinCellY && maxCellX == oldMaxCellX && maxCellY == oldMaxCellY) {
+			return;
+		}
+		for (int cellX = oldMinCellX; cellX <= oldMaxCellX; cellX++) {
+			for (int cellY = oldMinCellY; cellY <= oldMaxCellY; cellY++) {
+				if (cellX < minCellX || cellX > maxCellX || cellY < minCellY || cellY > maxCellY) {
+					removeFromCell(cellX, cellY, body);
+				}
+			}
+		}
+		for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+			for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+				if (cellX < oldMinCellX || cellX > oldMaxCellX || cellY < oldMinCellY || cellY > oldMaxCellY) {
+					addToCell(cellX, cellY, body);
+				}
+			}
+		}
+	}
+
+	public Bitmask getMask(final int body) {
+		checkBody(body);
+		return masks[body];
+	}
+
+	public int getX(final int body) {
+		checkBody(body);
+		return xs[body];
+	}
+
+	public int getY(final int body) {
+		checkBody(body);
+		return ys[body];
+	}
+
+	/**
+	 * @return the amount of bodies in the world.
+	 */
+	public int size() {
+		return bodyCount;
+	}
+
+	/**
+	 * Finds all pairs of colliding bodies. Every pair is reported once.
+	 */
+	public void findCollisions(final CollisionListener listener) {
+		for (int slot = 0; slot < cellKeys.length; slot++) {
+			final int count = cellCounts[slot];
+			if (count < 2) {
+				continue;
+			}
+			final int[] bodies = cellBodies[slot];
+			final int cellX = (int) (cellKeys[slot] >> 32);
+			final int cellY = (int) cellKeys[slot];
+			for (int i = 0; i < count - 1; i++) {
+				final int a = bodies[i];
+				for (int j = i + 1; j < count; j++) {
+					final int b = bodies[j];
+					// Two bodies may share many cells. Only the first one they share tests them.
+					if (Math.max(minCellXs[a], minCellXs[b]) != cellX || Math.max(minCellYs[a], minCellYs[b]) != cellY) {
+						continue;
+					}
+					if (masks[a].overlaps(masks[b], xs[b] - xs[a], ys[b] - ys[a])) {
+						listener.collision(Math.min(a, b), Math.max(a, b));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds all bodies that collide with a mask that is not part of the world.
+	 * Every body is reported once.
+	 */
+	public void findCollisions(final Bitmask mask, final int x, final int y, final IntConsumer listener) {
+		final int minCellX = Math.floorDiv(x, cellSize);
+		final int minCellY = Math.floorDiv(y, cellSize);
+		final int maxCellX = Math.floorDiv(x + mask.getWidth() - 1, cellSize);
+		final int maxCellY = Math.floorDiv(y + mask.getHeight() - 1, cellSize);
+		for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+			for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+				final int slot = findCell(cellX, cellY);
+				if (slot < 0) {
+					continue;
+				}
+				final int[] bodies = cellBodies[slot];
+				for (int i = 0; i < cellCounts[slot]; i++) {
+					final int body = bodies[i];
+					if (Math.max(minCellX, minCellXs[body]) != cellX || Math.max(minCellY, minCellYs[body]) != cellY) {
+						continue;
+					}
+					if (mask.overlaps(masks[body], xs[body] - x, ys[body] - y)) {
+						listener.accept(body);
+					}
+				}
+			}
+		}
+	}
+
+	private void place(final int body, final Bitmask mask, final int x, final int y) {
+		masks[body] = mask;
+		xs[body] = x;
+		ys[body] = y;
+		minCellXs[body] = Math.floorDiv(x, cellSize);
+		minCellYs[body] = Math.floorDiv(y, cellSize);
+		maxCellXs[body] = Math.floorDiv(x + mask.getWidth() - 1, cellSize);
+		maxCellYs[body] = Math.floorDiv(y + mask.getHeight() - 1, cellSize);
+	}
+
+	private void checkBody(final int body) {
+		if (body < 0 || body > highestBody || masks[body] == null) {
+			throw new IllegalArgumentException("There is no body " + body);
+		}
+	}
+
+	private void growBodies() {
+		final int length = masks.length * 2;
+		masks = Arrays.copyOf(masks, length);
+		xs = Arrays.copyOf(xs, length);
+		ys = Arrays.copyOf(ys, length);
+		minCellXs = Arrays.copyOf(minCellXs, length);
+		minCellYs = Arrays.copyOf(minCellYs, length);
+		maxCellXs = Arrays.copyOf(maxCellXs, length);
+		maxCellYs = Arrays.copyOf(maxCellYs, length);
+	}
+
+	private static long cellKey(final int cellX, final int cellY) {
+		return (long) cellX << 32 | (cellY & 0xFFFFFFFFL);
+	}
+
+	private int idealSlot(final long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (cellKeys.length - 1);
+	}
+
+	/**
+	 * @return the slot of the cell, or -1 when the cell is empty.
+	 */
+	private int findCell(final int cellX, final int cellY) {
+		final long key = cellKey(cellX, cellY);
+		final int mask = cellKeys.length - 1;
+		for (int slot = idealSlot(key);; slot = (slot + 1) & mask) {
+			if (cellBodies[slot] == null) {
+				return -1;
+			}
+			if (cellKeys[slot] == key) {
+				return slot;
+			}
+		}
+	}
+
+	private void addToCell(final int cellX, final int cellY, final int body) {
+		final long key = cellKey(cellX, cellY);
+		final int mask = cellKeys.length - 1;
+		int slot = idealSlot(key);
+		while (cellBodies[slot] != null && cellKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		if (cellBodies[slot] == null) {
+			cellKeys[slot] = key;
+			cellBodies[slot] = new int[4];
+			cellCounts[slot] = 0;
+			if (++usedCells * 2 > cellKeys.length) {
+				growCells();
+				slot = findCell(cellX, cellY);
+			}
+		}
+		if (cellCounts[slot] == cellBodies[slot].length) {
+			cellBodies[slot] = Arrays.copyOf(cellBodies[slot], cellCounts[slot] * 2);
+		}
+		cellBodies[slot][cellCounts[slot]++] = body;
+	}
+
+	private void removeFromCell(final int cellX, final int cellY, final int body) {
+		final int slot = findCell(cellX, cellY);
+		final int[] bodies = cellBodies[slot];
+		final int count = --cellCounts[slot];
+		for (int i = 0; i <= count; i++) {
+			if (bodies[i] == body) {
+				bodies[i] = bodies[count];
+				break;
+			}
+		}
+		if (count == 0) {
+			deleteCell(slot);
+		}
+	}
+
+	/**
+	 * Empties a slot, and moves later slots of the same probe sequence back so
+	 * lookups won't stop at the hole.
+	 */
+	private void deleteCell(int hole) {
+		final int mask = cellKeys.length - 1;
+		for (int slot = (hole + 1) & mask; cellBodies[slot] != null; slot = (slot + 1) & mask) {
+			final int ideal = idealSlot(cellKeys[slot]);
+			if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+				cellKeys[hole] = cellKeys[slot];
+				cellBodies[hole] = cellBodies[slot];
+				cellCounts[hole] = cellCounts[slot];
+				hole = slot;
+			}
+		}
+		cellBodies[hole] = null;
+		cellCounts[hole] = 0;
+		usedCells--;
+	}
+
+	private void growCells() {
+		final long[] oldKeys = cellKeys;
+		final int[][] oldBodies = cellBodies;
+		final int[] oldCounts = cellCounts;
+		cellKeys = new long[oldKeys.length * 2];
+		cellBodies = new int[oldKeys.length * 2][];
+		cellCounts = new int[oldKeys.length * 2];
+		final int mask = cellKeys.length - 1;
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			if (oldBodies[oldSlot] == null) {
+				continue;
+			}
+			int slot = idealSlot(oldKeys[oldSlot]);
+			while (cellBodies[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			cellKeys[slot] = oldKeys[oldSlot];
+			cellBodies[slot] = oldBodies[oldSlot];
+			cellCounts[slot] = oldCounts[oldSlot];
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package com.laamella.bitmask;
+
+import java.awt.Rectangle;
+
+/**
+ * A mask that one thread can change while other threads read it, without
+ * locks for the readers. The mask is cut into square tiles, each a frozen
+ * {@link Bitmask}. A change copies only the tiles it touches, and then
+ * publishes a new {@link Snapshot} with those tiles swapped in. Readers take a
+ * snapshot and get a consistent view of the mask, which never changes under
+ * them.
+ * <p>
+ * Writers are serialised with each other by synchronizing on this mask.
+ */
+public final class CopyOnWriteBitmask {
+	private final int w, h;
+	private final int tileSize;
+	private final int tilesX;
+	private volatile Snapshot current;
+
+	/**
+	 * A read only view of a {@link CopyOnWriteBitmask} at one moment.
+	 */
+	public static final class Snapshot {
+		private final CopyOnWriteBitmask owner;
+		// Row by row. Empty tiles are null.
+		private final Bitmask[] tiles;
+
+		private Snapshot(final CopyOnWriteBitmask owner, final Bitmask[] tiles) {
+			this.owner = owner;
+			this.tiles = tiles;
+		}
+
+		public int getWidth() {
+			return owner.w;
+		}
+
+		public int getHeight() {
+			return owner.h;
+		}
+
+		/**
+		 * @return true if the bit at (x,y) is set.
+		 */
+		public boolean getBit(final int x, final int y) {
+			final int tileSize = owner.tileSize;
+			final Bitmask tile = tiles[y / tileSize * owner.tilesX + x / tileSize];
+			return tile != null && tile.getBit(x % tileSize, y % tileSize);
+		}
+
+		/**
+		 * @return whether mask b at (xOffset,yOffset) overlaps this snapshot.
+		 */
+		public boolean overlaps(final Bitmask b, final int xOffset, final int yOffset) {
+			final int tileSize = owner.tileSize;
+			final int w = owner.w;
+			final int h = owner.h;
+			if (!owner.covers(b, xOffset, yOffset)) {
+				return false;
+			}
+			final int lastTileX = (Math.min(xOffset + b.getWidth(), w) - 1) / tileSize;
+			final int lastTileY = (Math.min(yOffset + b.getHeight(), h) - 1) / tileSize;
+			for (int tileY = Math.max(yOffset, 0) / tileSize; tileY <= lastTileY; tileY++) {
+				for (int tileX = Math.max(xOffset, 0) / tileSize; tileX <= lastTileX; tileX++) {
+					final Bitmask tile = tiles[tileY * owner.tilesX + tileX];
+					if (tile != null && tile.overlaps(b, xOffset - tileX * tileSize, yOffset - tileY * tileSize)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return the number of overlapping 'pixels' of this snapshot and mask
+		 *         b at (xOffset,yOffset).
+		 */
+		public int overlapArea(final Bitmask b, final int xOffset, final int yOffset) {
+			final int tileSize = owner.tileSize;
+			final int w = owner.w;
+			final int h = owner.h;
+			if (!owner.covers(b, xOffset, yOffset)) {
+				return 0;
+			}
+			final int lastTileX = (Math.min(xOffset + b.getWidth(), w) - 1) / tileSize;
+			final int lastTileY = (Math.min(yOffset + b.getHeight(), h) - 1) / tileSize;
+			int count = 0;
+			for (int tileY = Math.max(yOffset, 0) / tileSize; tileY <= lastTileY; tileY++) {
+				for (int tileX = Math.max(xOffset, 0) / tileSize; tileX <= lastTileX; tileX++) {
+					final Bitmask tile = tiles[tileY * owner.tilesX + tileX];
+					if (tile != null) {
+						count += tile.overlapArea(b, xOffset - tileX * tileSize, yOffset - tileY * tileSize);
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * @return a copy of this snapshot as a single mask.
+		 */
+		public Bitmask toBitmask() {
+			final Bitmask bitmask = new Bitmask(owner.w, owner.h);
+			for (int index = 0; index < tiles.length; index++) {
+				if (tiles[index] != null) {
+					BitmaskModifier.draw(bitmask, tiles[index], index % owner.tilesX * owner.tileSize,
+							index / owner.tilesX * owner.tileSize);
+				}
+			}
+			return bitmask;
+		}
+	}
+
+	/**
+	 * Creates an empty w x h mask.
+	 *
+	 * @param tileSize
+	 *            the width and height of a tile, a multiple of 64. Smaller
+	 *            tiles make changes cheaper to copy.
+	 */
+	public CopyOnWriteBitmask(final int w, final int h, final int tileSize) {
+		if (tileSize <= 0 || tileSize % Long.SIZE != 0) {
+			throw new IllegalArgumentException("Tile size should be a positive multiple of 64, but it is " + tileSize);
+		}
+		this.w = w;
+		this.h = h;
+		this.tileSize = tileSize;
+		this.tilesX = (w - 1) / tileSize + 1;
+		this.current = new Snapshot(this, new Bitmask[tilesX * ((h - 1) / tileSize + 1)]);
+	}
+
+	/**
+	 * Creates a mask with the contents of bitmask.
+	 */
+	public CopyOnWriteBitmask(final Bitmask bitmask, final int tileSize) {
+		this(bitmask.getWidth(), bitmask.getHeight(), tileSize);
+		draw(bitmask, 0, 0);
+	}
+
+	public int getWidth() {
+		return w;
+	}
+
+	public int getHeight() {
+		return h;
+	}
+
+	/**
+	 * @return the current contents. This never blocks.
+	 */
+	public Snapshot snapshot() {
+		return current;
+	}
+
+	// Whether mask b at (xOffset,yOffset) covers any of this mask.
+	private boolean covers(final Bitmask b, final int xOffset, final int yOffset) {
+		return xOffset < w && yOffset < h && xOffset + b.getWidth() > 0 && yOffset + b.getHeight() > 0;
+	}
+
+	/**
+	 * Draws mask b onto this mask (bitwise OR).
+	 */
+	public synchronized void draw(final Bitmask b, final int xOffset, final int yOffset) {
+		change(b, xOffset, yOffset, Bitmask.OR);
+	}
+
+	/**
+	 * Erases the bits that are set in mask b from this mask (bitwise AND NOT).
+	 */
+	public synchronized void erase(final Bitmask b, final int xOffset, final int yOffset) {
+		change(b, xOffset, yOffset, Bitmask.AND_NOT);
+	}
+
+	/**
+	 * Sets the bit at (x,y).
+	 */
+	public synchronized void setBit(final int x, final int y) {
+		if (current.getBit(x, y)) {
+			return;
+		}
+		final Bitmask[] tiles = current.tiles.clone();
+		final Bitmask tile = thaw(tiles, x / tileSize, y / tileSize);
+		tile.setBit(x % tileSize, y % tileSize);
+		publish(tiles);
+	}
+
+	/**
+	 * Clears the bit at (x,y).
+	 */
+	public synchronized void clearBit(final int x, final int y) {
+		if (!current.getBit(x, y)) {
+			return;
+		}
+		final Bitmask[] tiles = current.tiles.clone();
+		thaw(tiles, x / tileSize, y / tileSize).clearBit(x % tileSize, y % tileSize);
+		publish(tiles);
+	}
+
+	private void change(final Bitmask b, final int xOffset, final int yOffset, final int operation) {
+		// Only tiles under the set bits of b change.
+		final Rectangle bounds = b.getTightBounds();
+		if (bounds.isEmpty()) {
+			return;
+		}
+		final int left = Math.max(xOffset + bounds.x, 0);
+		final int top = Math.max(yOffset + bounds.y, 0);
+		final int right = Math.min(xOffset + bounds.x + bounds.width, w) - 1;
+		final int bottom = Math.min(yOffset + bounds.y + bounds.height, h) - 1;
+		if (left > right || top > bottom) {
+			return;
+		}
+		final Bitmask[] tiles = current.tiles.clone();
+		for (int tileY = top / tileSize; tileY <= bottom / tileSize; tileY++) {
+			for (int tileX = left / tileSize; tileX <= right / tileSize; tileX++) {
+				if (operation == Bitmask.AND_NOT && tiles[tileY * tilesX + tileX] == null) {
+					continue;
+				}
+				final Bitmask tile = thaw(tiles, tileX, tileY);
+				tile.combine(b, xOffset - tileX * tileSize, yOffset - tileY * tileSize, tile, operation);
+			}
+		}
+		publish(tiles);
+	}
+
+	/*
+	 * Replaces a tile in tiles by a copy that can be changed, or by a new
+	 * empty tile, and returns it.
+	 */
+	private Bitmask thaw(final Bitmask[] tiles, final int tileX, final int tileY) {
+		final int index = tileY * tilesX + tileX;
+		final Bitmask tile = tiles[index];
+		final Bitmask copy = tile != null ? new Bitmask(tile)
+				: new Bitmask(Math.min(tileSize, w - tileX * tileSize), Math.min(tileSize, h - tileY * tileSize));
+		tiles[index] = copy;
+		return copy;
+	}
+
+	private void publish(final Bitmask[] tiles) {
+		final Snapshot previous = current;
+		for (int index = 0; index < tiles.length; index++) {
+			if (tiles[index] != previous.tiles[index]) {
+				tiles[index].freeze();
+			}
+		}
+		current = new Snapshot(this, tiles);
+	}
+}
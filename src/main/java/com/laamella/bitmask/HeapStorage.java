@@ -0,0 +1,54 @@
+package com.laamella.bitmask;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Storage in a plain long array. This is what bitmasks normally use.
+ */
+final class HeapStorage extends BitmaskStorage {
+	private static final long serialVersionUID = 1L;
+
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	final long[] words;
+
+	HeapStorage(final int size) {
+		words = new long[size];
+	}
+
+	HeapStorage(final long[] words) {
+		this.words = words;
+	}
+
+	@Override
+	int size() {
+		return words.length;
+	}
+
+	@Override
+	long get(final int index) {
+		return words[index];
+	}
+
+	@Override
+	void set(final int index, final long word) {
+		words[index] = word;
+	}
+
+	@Override
+	void orAtomic(final int index, final long word) {
+		WORDS.getAndBitwiseOr(words, index, word);
+	}
+
+	@Override
+	void andNotAtomic(final int index, final long word) {
+		WORDS.getAndBitwiseAnd(words, index, ~word);
+	}
+
+	@Override
+	void fill(final int from, final int to, final long word) {
+		Arrays.fill(words, from, to, word);
+	}
+}
@@ -0,0 +1,67 @@
+package com.laamella.bitmask;
+
+import java.util.Arrays;
+
+/**
+ * A coarse summary of the words of a {@link Bitmask}. The rows of every
+ * stripe are divided in bands of {@link #BAND_HEIGHT} rows, and every band
+ * has a bit that is set when the band may contain set bits. It is a
+ * superset: bits that were cleared in the mask can stay set here.
+ * <p>
+ * The band bits of a stripe are stored in words, so a zero word skips 64
+ * bands at once.
+ */
+final class Occupancy {
+	static final int BAND_HEIGHT = 8;
+
+	private final int bandWords;
+	private final long[] bands;
+
+	/**
+	 * Summarizes the words in storage, which has stripes stripes of h rows.
+	 */
+	Occupancy(final BitmaskStorage storage, final int stripes, final int h) {
+		bandWords = ((h - 1) / BAND_HEIGHT) / Long.SIZE + 1;
+		bands = new long[stripes * bandWords];
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			for (int y = 0, index = stripe * h; y < h; y++, index++) {
+				if (storage.get(index) != 0) {
+					bands[stripe * bandWords + y / BAND_HEIGHT / Long.SIZE] |= 1L << (y / BAND_HEIGHT);
+				}
+			}
+		}
+	}
+
+	void clear() {
+		Arrays.fill(bands, 0);
+	}
+
+	void fill() {
+		Arrays.fill(bands, ~0L);
+	}
+
+	/**
+	 * Marks rows from to to (inclusive) of a stripe as possibly occupied.
+	 */
+	void mark(final int stripe, final int from, final int to) {
+		final int base = stripe * bandWords;
+		for (int band = from / BAND_HEIGHT; band <= to / BAND_HEIGHT; band++) {
+			bands[base + band / Long.SIZE] |= 1L << band;
+		}
+	}
+
+	/**
+	 * @return the bits of 64 bands of a stripe, starting at band first, which
+	 *         may be negative. Bands outside the mask are not occupied.
+	 */
+	long window(final int stripe, final int first) {
+		final int word = first >> 6;
+		final int bit = first & 63;
+		final long lo = word(stripe, word) >>> bit;
+		return bit == 0 ? lo : lo | word(stripe, word + 1) << (Long.SIZE - bit);
+	}
+
+	private long word(final int stripe, final int word) {
+		return word >= 0 && word < bandWords ? bands[stripe * bandWords + word] : 0;
+	}
+}
@@ -0,0 +1,18 @@
+package com.laamella.bitmask;
+
+/**
+ * How two masks overlap, from {@link Bitmask#overlapResponse(Bitmask, int, int)}.
+ * <p>
+ * The gradient is how the overlapping area changes when the second mask
+ * moves one pixel: gradientX is the area one pixel to the right minus the
+ * area one pixel to the left, and gradientY is the area one pixel down minus
+ * the area one pixel up. Pointing the other way gives a collision normal.
+ * <p>
+ * The separation is the shortest move of the second mask along one axis
+ * after which the masks don't overlap anymore. It is (0, 0) when they don't
+ * overlap.
+ */
+public record OverlapResponse(int area, int gradientX, int gradientY, int separationX, int separationY) {
+	/** The response for masks that don't overlap, not even after a move of one pixel. */
+	public static final OverlapResponse NONE = new OverlapResponse(0, 0, 0, 0, 0);
+}
@@ -0,0 +1,97 @@
+package com.laamella.bitmask;
+
+/**
+ * Keeps rotated copies of a mask for a fixed amount of angles, so spinning
+ * objects don't rotate their mask every frame. Angles are rounded to the
+ * nearest of steps angles in a full turn. A mask rotated by step s is
+ * {@link BitmaskModifier#rotate(Bitmask, double)} by s * 2 * PI / steps.
+ * <p>
+ * Rotations are made the first time they are needed, and kept until they
+ * would take more than the memory budget. Rotations that don't fit are made
+ * again every time. Kept rotations are frozen, because they are shared. The
+ * mask must not change while it is cached. The cache can be shared between
+ * threads.
+ */
+public final class RotatedBitmaskCache {
+	private final Bitmask bitmask;
+	private final BudgetedBitmaskArray rotations;
+
+	/**
+	 * Keeps every rotation that was asked for.
+	 *
+	 * @param steps
+	 *            the amount of angles in a full turn.
+	 */
+	public RotatedBitmaskCache(final Bitmask bitmask, final int steps) {
+		this(bitmask, steps, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param steps
+	 *            the amount of angles in a full turn.
+	 * @param memoryBudget
+	 *            the amount of bytes the rotated copies may take.
+	 */
+	public RotatedBitmaskCache(final Bitmask bitmask, final int steps, final long memoryBudget) {
+		if (steps < 1) {
+			throw new IllegalArgumentException("Steps should be at least 1, but it is " + steps);
+		}
+		this.bitmask = bitmask;
+		this.rotations = new BudgetedBitmaskArray(steps, memoryBudget);
+		rotations.setUncounted(0, bitmask);
+	}
+
+	public Bitmask getBitmask() {
+		return bitmask;
+	}
+
+	public int getSteps() {
+		return rotations.length();
+	}
+
+	/**
+	 * @return the amount of rotations that are kept, counting the mask itself
+	 *         for step 0.
+	 */
+	public int getCachedStepCount() {
+		return rotations.count();
+	}
+
+	/**
+	 * @return the step nearest to angle, in radians.
+	 */
+	public int getStep(final double angle) {
+		final int steps = rotations.length();
+		return (int) Math.floorMod(Math.round(angle / (2 * Math.PI) * steps), (long) steps);
+	}
+
+	/**
+	 * @return the angle of step, in radians.
+	 */
+	public double getAngle(final int step) {
+		return step * 2 * Math.PI / rotations.length();
+	}
+
+	/**
+	 * @return the mask rotated by the step nearest to angle, in radians.
+	 */
+	public Bitmask get(final double angle) {
+		return getRotation(getStep(angle));
+	}
+
+	/**
+	 * @return the mask rotated by step, from 0 up to the amount of steps.
+	 */
+	public Bitmask getRotation(final int step) {
+		final Bitmask cached = rotations.get(step);
+		if (cached != null) {
+			return cached;
+		}
+		final Bitmask rotated = BitmaskModifier.rotate(bitmask, getAngle(step));
+		final long bytes = Bitmask.sizeInWords(rotated.getWidth(), rotated.getHeight()) * Long.BYTES;
+		if (!rotations.reserve(bytes)) {
+			return rotated;
+		}
+		return rotations.keep(step, rotated, bytes);
+	}
+}
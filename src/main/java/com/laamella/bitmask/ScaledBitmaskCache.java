@@ -0,0 +1,100 @@
+package com.laamella.bitmask;
+
+/**
+ * Keeps scaled copies of a mask for zoom levels that are powers of two, so a
+ * camera that zooms in and out never scales the same mask twice. Level 0 is
+ * the mask itself. Level n is the mask scaled down by 2^n, and level -n the
+ * mask scaled up by 2^n, just like {@link BitmaskModifier#scale(Bitmask, int, int)}
+ * would.
+ * <p>
+ * Levels are scaled the first time they are needed, and kept until they
+ * would take more than the memory budget. Levels that don't fit are scaled
+ * again every time. Kept levels are frozen, because they are shared. The mask
+ * must not change while it is cached. The cache can be shared between
+ * threads.
+ */
+public final class ScaledBitmaskCache {
+	/** The most a mask can be scaled up: by 2^MAX_ZOOM_IN. */
+	public static final int MAX_ZOOM_IN = 8;
+	// Scaling down further than this gives a 1x1 mask for every mask that fits in an int.
+	private static final int MAX_ZOOM_OUT = 31;
+
+	private final Bitmask bitmask;
+	private final BudgetedBitmaskArray levels;
+
+	/**
+	 * Keeps every level that was asked for.
+	 */
+	public ScaledBitmaskCache(final Bitmask bitmask) {
+		this(bitmask, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param memoryBudget
+	 *            the amount of bytes the scaled copies may take.
+	 */
+	public ScaledBitmaskCache(final Bitmask bitmask, final long memoryBudget) {
+		this.bitmask = bitmask;
+		this.levels = new BudgetedBitmaskArray(MAX_ZOOM_IN + 1 + MAX_ZOOM_OUT, memoryBudget);
+		levels.setUncounted(MAX_ZOOM_IN, bitmask);
+	}
+
+	public Bitmask getBitmask() {
+		return bitmask;
+	}
+
+	/**
+	 * @return the amount of levels that are kept, counting the mask itself for
+	 *         level 0.
+	 */
+	public int getCachedLevelCount() {
+		return levels.count();
+	}
+
+	/**
+	 * @return the width of the mask at level.
+	 */
+	public int getWidth(final int level) {
+		return scaledSize(bitmask.getWidth(), level);
+	}
+
+	/**
+	 * @return the height of the mask at level.
+	 */
+	public int getHeight(final int level) {
+		return scaledSize(bitmask.getHeight(), level);
+	}
+
+	private static int scaledSize(final int size, final int level) {
+		if (level >= 0) {
+			return Math.max(size >> level, 1);
+		}
+		if ((long) size << -level > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Level " + level + " would make the mask too large");
+		}
+		return size << -level;
+	}
+
+	/**
+	 * @return the mask at level, from -{@link #MAX_ZOOM_IN} up to 31.
+	 */
+	public Bitmask get(final int level) {
+		if (level < -MAX_ZOOM_IN || level > MAX_ZOOM_OUT) {
+			throw new IllegalArgumentException(
+					"Level should be from " + -MAX_ZOOM_IN + " up to " + MAX_ZOOM_OUT + ", but it is " + level);
+		}
+		final int index = level + MAX_ZOOM_IN;
+		final Bitmask cached = levels.get(index);
+		if (cached != null) {
+			return cached;
+		}
+		final int width = getWidth(level);
+		final int height = getHeight(level);
+		final Bitmask scaled = BitmaskModifier.scale(bitmask, width, height);
+		final long bytes = Bitmask.sizeInWords(width, height) * Long.BYTES;
+		if (!levels.reserve(bytes)) {
+			return scaled;
+		}
+		return levels.keep(index, scaled, bytes);
+	}
+}
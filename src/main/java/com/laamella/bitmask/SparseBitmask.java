@@ -0,0 +1,293 @@
+package com.laamella.bitmask;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A read only bitmask for huge, mostly empty (or mostly full) masks, like the
+ * terrain of a whole game world. It uses the column stripe layout of
+ * {@link Bitmask}, cut into chunks of one stripe by {@link #CHUNK_HEIGHT}
+ * rows. Every chunk is stored in the smallest of three forms:
+ * <ul>
+ * <li>nothing, when no bits are set,</li>
+ * <li>runs of rows with the same word, for solid ground, air and straight
+ * walls,</li>
+ * <li>the words themselves, for everything else.</li>
+ * </ul>
+ * Sprites can be tested against it with {@link #overlaps(Bitmask, int, int)}
+ * and {@link #overlapArea(Bitmask, int, int)} without expanding it. Convert
+ * with {@link #of(Bitmask)} and {@link #toBitmask()}. Worlds that are too
+ * large to ever exist as one Bitmask can be built in a {@link TiledBitmask}
+ * and converted with {@link #of(TiledBitmask, int, int, int, int)}.
+ */
+public final class SparseBitmask implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The height of a chunk in rows. */
+	public static final int CHUNK_HEIGHT = 256;
+
+	private final int w, h;
+	private final int chunksPerStripe;
+	// Stripe by stripe, like the words of a Bitmask. Empty chunks are null.
+	private final Chunk[] chunks;
+
+	private sealed interface Chunk extends Serializable permits Runs, Dense {
+		long word(int row);
+
+		int countBits(int rows);
+	}
+
+	/**
+	 * Run i covers rows starts[i] up to the next start, or the end of the
+	 * chunk, and all its rows are words[i].
+	 */
+	private record Runs(int[] starts, long[] words) implements Chunk {
+		@Override
+		public long word(final int row) {
+			final int run = Arrays.binarySearch(starts, row);
+			return words[run >= 0 ? run : -run - 2];
+		}
+
+		@Override
+		public int countBits(final int rows) {
+			int count = 0;
+			for (int run = 0; run < starts.length; run++) {
+				final int end = run + 1 < starts.length ? starts[run + 1] : rows;
+				count += Long.bitCount(words[run]) * (end - starts[run]);
+			}
+			return count;
+		}
+	}
+
+	private record Dense(long[] words) implements Chunk {
+		@Override
+		public long word(final int row) {
+			return words[row];
+		}
+
+		@Override
+		public int countBits(final int rows) {
+			int count = 0;
+			for (final long word : words) {
+				count += Long.bitCount(word);
+			}
+			return count;
+		}
+	}
+
+	private SparseBitmask(final int w, final int h) {
+		this.w = w;
+		this.h = h;
+		this.chunksPerStripe = (h - 1) / CHUNK_HEIGHT + 1;
+		this.chunks = new Chunk[((w - 1) / Long.SIZE + 1) * chunksPerStripe];
+	}
+
+	// Where the words of a new mask come from. Bits outside the mask must be zero.
+	private interface WordSource {
+		long word(int stripe, int y);
+	}
+
+	/**
+	 * @return a sparse copy of bitmask.
+	 */
+	public static SparseBitmask of(final Bitmask bitmask) {
+		return of(bitmask.getWidth(), bitmask.getHeight(), bitmask::getWord);
+	}
+
+	/**
+	 * @return a sparse copy of the w x h rectangle of tiled that starts at
+	 *         (x,y). Only one chunk is expanded at a time, so the copy never
+	 *         exists in dense form.
+	 */
+	public static SparseBitmask of(final TiledBitmask tiled, final int x, final int y, final int w, final int h) {
+		final int lastStripe = (w - 1) / Long.SIZE;
+		final long lastMask = -1L >>> (Long.SIZE - 1 - (w - 1) % Long.SIZE);
+		return of(w, h, (stripe, row) -> {
+			final long word = tiled.getWord(x + stripe * Long.SIZE, y + row);
+			return stripe == lastStripe ? word & lastMask : word;
+		});
+	}
+
+	private static SparseBitmask of(final int w, final int h, final WordSource source) {
+		final SparseBitmask sparse = new SparseBitmask(w, h);
+		final int stripes = (w - 1) / Long.SIZE + 1;
+		final long[] words = new long[CHUNK_HEIGHT];
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			for (int chunk = 0; chunk < sparse.chunksPerStripe; chunk++) {
+				final int top = chunk * CHUNK_HEIGHT;
+				final int rows = Math.min(CHUNK_HEIGHT, h - top);
+				int runs = 1;
+				for (int row = 0; row < rows; row++) {
+					words[row] = source.word(stripe, top + row);
+					if (row > 0 && words[row] != words[row - 1]) {
+						runs++;
+					}
+				}
+				sparse.chunks[stripe * sparse.chunksPerStripe + chunk] = encode(words, rows, runs);
+			}
+		}
+		return sparse;
+	}
+
+	private static Chunk encode(final long[] words, final int rows, final int runs) {
+		if (runs == 1 && words[0] == 0) {
+			return null;
+		}
+		// A run takes an int and a long, a row in a dense chunk a long.
+		if (runs * (Integer.BYTES + Long.BYTES) >= rows * Long.BYTES) {
+			return new Dense(Arrays.copyOf(words, rows));
+		}
+		final int[] starts = new int[runs];
+		final long[] runWords = new long[runs];
+		runWords[0] = words[0];
+		for (int row = 1, run = 0; row < rows; row++) {
+			if (words[row] != words[row - 1]) {
+				run++;
+				starts[run] = row;
+				runWords[run] = words[row];
+			}
+		}
+		return new Runs(starts, runWords);
+	}
+
+	/**
+	 * @return a dense copy of this mask.
+	 */
+	public Bitmask toBitmask() {
+		final Bitmask bitmask = new Bitmask(w, h);
+		for (int index = 0; index < chunks.length; index++) {
+			final Chunk chunk = chunks[index];
+			if (chunk == null) {
+				continue;
+			}
+			final int stripe = index / chunksPerStripe;
+			final int top = index % chunksPerStripe * CHUNK_HEIGHT;
+			final int rows = Math.min(CHUNK_HEIGHT, h - top);
+			for (int row = 0; row < rows; row++) {
+				final long word = chunk.word(row);
+				if (word != 0) {
+					bitmask.setWord(stripe, top + row, word);
+				}
+			}
+		}
+		return bitmask;
+	}
+
+	public int getWidth() {
+		return w;
+	}
+
+	public int getHeight() {
+		return h;
+	}
+
+	/**
+	 * @return true if the bit at (x,y) is set. Coordinates start at (0,0)
+	 */
+	public boolean getBit(final int x, final int y) {
+		final Chunk chunk = chunks[x / Long.SIZE * chunksPerStripe + y / CHUNK_HEIGHT];
+		return chunk != null && (chunk.word(y % CHUNK_HEIGHT) & 1L << x) != 0;
+	}
+
+	/** Counts the bits in the mask */
+	public long countBits() {
+		long total = 0;
+		for (int index = 0; index < chunks.length; index++) {
+			final Chunk chunk = chunks[index];
+			if (chunk != null) {
+				total += chunk.countBits(Math.min(CHUNK_HEIGHT, h - index % chunksPerStripe * CHUNK_HEIGHT));
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns whether this mask and b overlap, when b is at (xoffset,yoffset).
+	 * The offsets work like those of {@link Bitmask#overlaps(Bitmask, int, int)}.
+	 */
+	public boolean overlaps(final Bitmask b, final int xoffset, final int yoffset) {
+		return scan(b, xoffset, yoffset, true) != 0;
+	}
+
+	/**
+	 * Returns the number of overlapping 'pixels' of this mask and b, when b is
+	 * at (xoffset,yoffset).
+	 */
+	public long overlapArea(final Bitmask b, final int xoffset, final int yoffset) {
+		return scan(b, xoffset, yoffset, false);
+	}
+
+	/*
+	 * Walks the chunks under b, shifting the words of b into the stripes of
+	 * this mask like Bitmask.combine does. Returns the number of overlapping
+	 * bits, or 1 as soon as one is found when first is set.
+	 */
+	private long scan(final Bitmask b, final int xoffset, final int yoffset, final boolean first) {
+		final int bw = b.getWidth();
+		final int bh = b.getHeight();
+		if (xoffset >= w || yoffset >= h || xoffset + bw <= 0 || yoffset + bh <= 0) {
+			return 0;
+		}
+		final BitmaskStorage bbits = b.storage();
+		final int bstripes = (bw - 1) / Long.SIZE + 1;
+		final int firstStripe = Math.max(xoffset, 0) / Long.SIZE;
+		final int lastStripe = (Math.min(w, xoffset + bw) - 1) / Long.SIZE;
+		final int top = Math.max(yoffset, 0);
+		final int bottom = Math.min(yoffset + bh, h);
+		long count = 0;
+		for (int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+			// The x coordinate in b of the first bit in this stripe.
+			final int bx = stripe * Long.SIZE - xoffset;
+			final int lo = Math.floorDiv(bx, Long.SIZE);
+			final int shift = bx & (Long.SIZE - 1);
+			final int rshift = Long.SIZE - shift;
+			// Stripes of b that don't exist are read from a stripe that does, and masked away.
+			final long lomask = lo >= 0 ? ~0L : 0;
+			final long himask = shift != 0 && lo + 1 < bstripes ? ~0L : 0;
+			final int blo = Math.max(lo, 0) * bh - yoffset;
+			final int bhi = Math.min(lo + 1, bstripes - 1) * bh - yoffset;
+			for (int chunkIndex = top / CHUNK_HEIGHT; chunkIndex <= (bottom - 1) / CHUNK_HEIGHT; chunkIndex++) {
+				final Chunk chunk = chunks[stripe * chunksPerStripe + chunkIndex];
+				if (chunk == null) {
+					continue;
+				}
+				final int chunkTop = chunkIndex * CHUNK_HEIGHT;
+				final int from = Math.max(top, chunkTop);
+				final int to = Math.min(bottom, chunkTop + CHUNK_HEIGHT);
+				if (chunk instanceof Dense dense) {
+					for (int y = from; y < to; y++) {
+						final long overlap = dense.words[y - chunkTop]
+								& ((bbits.get(blo + y) >>> shift & lomask) | (bbits.get(bhi + y) << rshift & himask));
+						if (overlap != 0) {
+							if (first) {
+								return 1;
+							}
+							count += Long.bitCount(overlap);
+						}
+					}
+				} else if (chunk instanceof Runs runs) {
+					for (int run = 0; run < runs.starts.length; run++) {
+						final long word = runs.words[run];
+						final int runFrom = Math.max(from, chunkTop + runs.starts[run]);
+						final int runTo = run + 1 < runs.starts.length ? Math.min(to, chunkTop + runs.starts[run + 1])
+								: to;
+						if (word == 0) {
+							continue;
+						}
+						for (int y = runFrom; y < runTo; y++) {
+							final long overlap = word
+									& ((bbits.get(blo + y) >>> shift & lomask) | (bbits.get(bhi + y) << rshift & himask));
+							if (overlap != 0) {
+								if (first) {
+									return 1;
+								}
+								count += Long.bitCount(overlap);
+							}
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,305 @@
+package com.laamella.bitmask;
+
+import java.awt.Rectangle;
+
+/**
+ * An unbounded mask, for worlds that are too large for a single
+ * {@link Bitmask} or are generated while playing. It is made of square tiles,
+ * each a Bitmask, which are only allocated when a bit is set on them. Tiles
+ * nobody is near can be unloaded, and loaded again later.
+ * <p>
+ * Coordinates may be negative. Tile (tileX, tileY) covers the pixels from
+ * (tileX * tileSize, tileY * tileSize) up to the next tile.
+ */
+public final class TiledBitmask {
+	/** The tile size used by {@link #TiledBitmask()}. */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private final int tileSize;
+	// Tiles, in an open addressing hash table. A slot is free when its tile is null.
+	private long[] tileKeys = new long[64];
+	private Bitmask[] tiles = new Bitmask[64];
+	private int tileCount = 0;
+
+	/**
+	 * Receives tiles that are unloaded, for example to store them.
+	 */
+	public interface TileListener {
+		void tile(int tileX, int tileY, Bitmask tile);
+	}
+
+	public TiledBitmask() {
+		this(DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * @param tileSize
+	 *            the width and height of a tile, a multiple of 64.
+	 */
+	public TiledBitmask(final int tileSize) {
+		if (tileSize <= 0 || tileSize % Long.SIZE != 0) {
+			throw new IllegalArgumentException("Tile size should be a positive multiple of 64, but it is " + tileSize);
+		}
+		this.tileSize = tileSize;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * @return the amount of tiles in memory.
+	 */
+	public int getTileCount() {
+		return tileCount;
+	}
+
+	private static long key(final int tileX, final int tileY) {
+		return (long) tileX << 32 | (tileY & 0xffffffffL);
+	}
+
+	private int idealSlot(final long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (tileKeys.length - 1);
+	}
+
+	/**
+	 * @return the slot of the tile, or the free slot where it would go.
+	 */
+	private int findSlot(final long key) {
+		final int mask = tileKeys.length - 1;
+		int slot = idealSlot(key);
+		while (tiles[slot] != null && tileKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the tile at (tileX, tileY), or null if it has no bits set or is
+	 *         unloaded.
+	 */
+	public Bitmask getTile(final int tileX, final int tileY) {
+		return tiles[findSlot(key(tileX, tileY))];
+	}
+
+	/**
+	 * Puts a tile in place, for example one that was unloaded before. A null
+	 * tile removes the tile.
+	 */
+	public void putTile(final int tileX, final int tileY, final Bitmask tile) {
+		if (tile == null) {
+			final int slot = findSlot(key(tileX, tileY));
+			if (tiles[slot] != null) {
+				deleteTile(slot);
+			}
+			return;
+		}
+		if (tile.getWidth() != tileSize || tile.getHeight() != tileSize) {
+			throw new IllegalArgumentException("Tile should be " + tileSize + "x" + tileSize + ", but it is "
+					+ tile.getWidth() + "x" + tile.getHeight());
+		}
+		final long key = key(tileX, tileY);
+		final int slot = findSlot(key);
+		if (tiles[slot] != null) {
+			tiles[slot] = tile;
+			return;
+		}
+		tileKeys[slot] = key;
+		tiles[slot] = tile;
+		if (++tileCount * 2 > tileKeys.length) {
+			growTiles();
+		}
+	}
+
+	private Bitmask getOrCreateTile(final int tileX, final int tileY) {
+		final Bitmask tile = getTile(tileX, tileY);
+		if (tile != null) {
+			return tile;
+		}
+		final Bitmask newTile = new Bitmask(tileSize, tileSize);
+		putTile(tileX, tileY, newTile);
+		return newTile;
+	}
+
+	/**
+	 * Empties a slot, and moves later slots of the same probe sequence back so
+	 * lookups won't stop at the hole.
+	 */
+	private void deleteTile(int hole) {
+		final int mask = tileKeys.length - 1;
+		for (int slot = (hole + 1) & mask; tiles[slot] != null; slot = (slot + 1) & mask) {
+			final int ideal = idealSlot(tileKeys[slot]);
+			if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+				tileKeys[hole] = tileKeys[slot];
+				tiles[hole] = tiles[slot];
+				hole = slot;
+			}
+		}
+		tiles[hole] = null;
+		tileCount--;
+	}
+
+	private void growTiles() {
+		final long[] oldKeys = tileKeys;
+		final Bitmask[] oldTiles = tiles;
+		tileKeys = new long[oldKeys.length * 2];
+		tiles = new Bitmask[oldKeys.length * 2];
+		final int mask = tileKeys.length - 1;
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			if (oldTiles[oldSlot] == null) {
+				continue;
+			}
+			int slot = idealSlot(oldKeys[oldSlot]);
+			while (tiles[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			tileKeys[slot] = oldKeys[oldSlot];
+			tiles[slot] = oldTiles[oldSlot];
+		}
+	}
+
+	/**
+	 * @return true if the bit at (x,y) is set.
+	 */
+	public boolean getBit(final int x, final int y) {
+		final Bitmask tile = getTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+		return tile != null && tile.getBit(Math.floorMod(x, tileSize), Math.floorMod(y, tileSize));
+	}
+
+	/**
+	 * @return the 64 bits from (x,y) on. Bit n is pixel (x + n, y).
+	 */
+	long getWord(final int x, final int y) {
+		final int shift = x & (Long.SIZE - 1);
+		final long word = getAlignedWord(x - shift, y);
+		if (shift == 0) {
+			return word;
+		}
+		return word >>> shift | getAlignedWord(x - shift + Long.SIZE, y) << (Long.SIZE - shift);
+	}
+
+	// Tiles are a multiple of 64 wide, so an aligned word is always in one tile.
+	private long getAlignedWord(final int x, final int y) {
+		final Bitmask tile = getTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+		return tile == null ? 0 : tile.getWord(Math.floorMod(x, tileSize) / Long.SIZE, Math.floorMod(y, tileSize));
+	}
+
+	/**
+	 * Sets the bit at (x,y), allocating its tile if needed.
+	 */
+	public void setBit(final int x, final int y) {
+		getOrCreateTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize)).setBit(Math.floorMod(x, tileSize),
+				Math.floorMod(y, tileSize));
+	}
+
+	/**
+	 * Clears the bit at (x,y).
+	 */
+	public void clearBit(final int x, final int y) {
+		final Bitmask tile = getTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+		if (tile != null) {
+			tile.clearBit(Math.floorMod(x, tileSize), Math.floorMod(y, tileSize));
+		}
+	}
+
+	/**
+	 * Draws mask b at (xOffset,yOffset) (bitwise OR), allocating the tiles
+	 * under its set bits if needed.
+	 */
+	public void draw(final Bitmask b, final int xOffset, final int yOffset) {
+		final Rectangle bounds = b.getTightBounds();
+		if (bounds.isEmpty()) {
+			return;
+		}
+		final int lastTileX = Math.floorDiv(xOffset + bounds.x + bounds.width - 1, tileSize);
+		final int lastTileY = Math.floorDiv(yOffset + bounds.y + bounds.height - 1, tileSize);
+		for (int tileX = Math.floorDiv(xOffset + bounds.x, tileSize); tileX <= lastTileX; tileX++) {
+			for (int tileY = Math.floorDiv(yOffset + bounds.y, tileSize); tileY <= lastTileY; tileY++) {
+				BitmaskModifier.draw(getOrCreateTile(tileX, tileY), b, xOffset - tileX * tileSize,
+						yOffset - tileY * tileSize);
+			}
+		}
+	}
+
+	/**
+	 * Erases the bits that are set in mask b at (xOffset,yOffset) (bitwise AND
+	 * NOT). Tiles stay allocated, even when they end up empty.
+	 */
+	public void erase(final Bitmask b, final int xOffset, final int yOffset) {
+		final int lastTileX = Math.floorDiv(xOffset + b.getWidth() - 1, tileSize);
+		final int lastTileY = Math.floorDiv(yOffset + b.getHeight() - 1, tileSize);
+		for (int tileX = Math.floorDiv(xOffset, tileSize); tileX <= lastTileX; tileX++) {
+			for (int tileY = Math.floorDiv(yOffset, tileSize); tileY <= lastTileY; tileY++) {
+				final Bitmask tile = getTile(tileX, tileY);
+				if (tile != null) {
+					BitmaskModifier.erase(tile, b, xOffset - tileX * tileSize, yOffset - tileY * tileSize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether mask b at (xOffset,yOffset) overlaps this mask.
+	 */
+	public boolean overlaps(final Bitmask b, final int xOffset, final int yOffset) {
+		final int lastTileX = Math.floorDiv(xOffset + b.getWidth() - 1, tileSize);
+		final int lastTileY = Math.floorDiv(yOffset + b.getHeight() - 1, tileSize);
+		for (int tileX = Math.floorDiv(xOffset, tileSize); tileX <= lastTileX; tileX++) {
+			for (int tileY = Math.floorDiv(yOffset, tileSize); tileY <= lastTileY; tileY++) {
+				final Bitmask tile = getTile(tileX, tileY);
+				if (tile != null && tile.overlaps(b, xOffset - tileX * tileSize, yOffset - tileY * tileSize)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of overlapping 'pixels' of this mask and mask b at
+	 *         (xOffset,yOffset).
+	 */
+	public long overlapArea(final Bitmask b, final int xOffset, final int yOffset) {
+		long count = 0;
+		final int lastTileX = Math.floorDiv(xOffset + b.getWidth() - 1, tileSize);
+		final int lastTileY = Math.floorDiv(yOffset + b.getHeight() - 1, tileSize);
+		for (int tileX = Math.floorDiv(xOffset, tileSize); tileX <= lastTileX; tileX++) {
+			for (int tileY = Math.floorDiv(yOffset, tileSize); tileY <= lastTileY; tileY++) {
+				final Bitmask tile = getTile(tileX, tileY);
+				if (tile != null) {
+					count += tile.overlapArea(b, xOffset - tileX * tileSize, yOffset - tileY * tileSize);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Unloads all tiles outside of the tiles from (minTileX, minTileY) up to
+	 * and including (maxTileX, maxTileY).
+	 *
+	 * @param listener
+	 *            gets every unloaded tile, may be null.
+	 * @return the amount of unloaded tiles.
+	 */
+	public int unloadTilesOutside(final int minTileX, final int minTileY, final int maxTileX, final int maxTileY,
+			final TileListener listener) {
+		int unloaded = 0;
+		for (int slot = 0; slot < tiles.length;) {
+			final Bitmask tile = tiles[slot];
+			final int tileX = (int) (tileKeys[slot] >> 32);
+			final int tileY = (int) tileKeys[slot];
+			if (tile == null || (tileX >= minTileX && tileX <= maxTileX && tileY >= minTileY && tileY <= maxTileY)) {
+				slot++;
+				continue;
+			}
+			// Deleting can move a later tile into this slot, so look at it again.
+			deleteTile(slot);
+			unloaded++;
+			if (listener != null) {
+				listener.tile(tileX, tileY, tile);
+			}
+		}
+		return unloaded;
+	}
+}
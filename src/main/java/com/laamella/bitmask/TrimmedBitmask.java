@@ -0,0 +1,9 @@
+package com.laamella.bitmask;
+
+/**
+ * A bitmask cropped to its set bits by {@link BitmaskModifier#trim(Bitmask)},
+ * with the position of its top left corner in the original mask. Drawing
+ * bitmask at (x, y) gives the original set bits back.
+ */
+public record TrimmedBitmask(Bitmask bitmask, int x, int y) {
+}
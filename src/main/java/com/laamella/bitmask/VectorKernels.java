@@ -0,0 +1,130 @@
+package com.laamella.bitmask;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The row loops of {@link Bitmask}, processing as many rows at once as the CPU
+ * has long lanes. They mirror the scalar row loops in Bitmask exactly.
+ * <p>
+ * This class uses the jdk.incubator.vector module. It must only be touched
+ * when {@link Bitmask#VECTORIZED} is true, because it can't even be loaded
+ * when the module isn't there.
+ */
+final class VectorKernels {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	private VectorKernels() {
+		// can't instantiate
+	}
+
+	static int lanes() {
+		return LANES;
+	}
+
+	static boolean overlapsRows(final long[] a, final int ap, final long[] b, final int bp, final int rows) {
+		int i = 0;
+		for (final int bound = SPECIES.loopBound(rows); i < bound; i += LANES) {
+			final LongVector overlap = LongVector.fromArray(SPECIES, a, ap + i)
+					.and(LongVector.fromArray(SPECIES, b, bp + i));
+			if (overlap.compare(VectorOperators.NE, 0).anyTrue()) {
+				return true;
+			}
+		}
+		for (; i < rows; i++) {
+			if ((a[ap + i] & b[bp + i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean overlapsRows(final long[] a, final int ap, final int app, final long[] b, final int bp,
+			final int rows, final int shift, final long himask) {
+		final int rshift = Long.SIZE - shift;
+		int i = 0;
+		for (final int bound = SPECIES.loopBound(rows); i < bound; i += LANES) {
+			final LongVector overlap = shifted(a, ap + i, app + i, shift, rshift, himask)
+					.and(LongVector.fromArray(SPECIES, b, bp + i));
+			if (overlap.compare(VectorOperators.NE, 0).anyTrue()) {
+				return true;
+			}
+		}
+		for (; i < rows; i++) {
+			if ((((a[ap + i] >>> shift) | (a[app + i] << rshift & himask)) & b[bp + i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static int overlapAreaRows(final long[] a, final int ap, final long[] b, final int bp, final int rows) {
+		LongVector counts = LongVector.zero(SPECIES);
+		int i = 0;
+		for (final int bound = SPECIES.loopBound(rows); i < bound; i += LANES) {
+			counts = counts.add(LongVector.fromArray(SPECIES, a, ap + i).and(LongVector.fromArray(SPECIES, b, bp + i))
+					.lanewise(VectorOperators.BIT_COUNT));
+		}
+		int count = (int) counts.reduceLanes(VectorOperators.ADD);
+		for (; i < rows; i++) {
+			count += Long.bitCount(a[ap + i] & b[bp + i]);
+		}
+		return count;
+	}
+
+	static int overlapAreaRows(final long[] a, final int ap, final int app, final long[] b, final int bp,
+			final int rows, final int shift, final long himask) {
+		final int rshift = Long.SIZE - shift;
+		LongVector counts = LongVector.zero(SPECIES);
+		int i = 0;
+		for (final int bound = SPECIES.loopBound(rows); i < bound; i += LANES) {
+			counts = counts.add(shifted(a, ap + i, app + i, shift, rshift, himask)
+					.and(LongVector.fromArray(SPECIES, b, bp + i)).lanewise(VectorOperators.BIT_COUNT));
+		}
+		int count = (int) counts.reduceLanes(VectorOperators.ADD);
+		for (; i < rows; i++) {
+			count += Long.bitCount(((a[ap + i] >>> shift) | (a[app + i] << rshift & himask)) & b[bp + i]);
+		}
+		return count;
+	}
+
+	static void combineRows(final long[] a, final int ap, final long[] b, final int blo, final int bhi,
+			final long[] c, final int rows, final int shift, final long lomask, final long himask,
+			final int operation) {
+		final int rshift = Long.SIZE - shift;
+		final VectorOperators.Binary vectorOperation = switch (operation) {
+			case Bitmask.OR -> VectorOperators.OR;
+			case Bitmask.AND_NOT -> VectorOperators.AND_NOT;
+			case Bitmask.XOR -> VectorOperators.XOR;
+			case Bitmask.AND -> VectorOperators.AND;
+			default -> throw new IllegalArgumentException("Don't know operation " + operation);
+		};
+		int i = 0;
+		for (final int bound = SPECIES.loopBound(rows); i < bound; i += LANES) {
+			final LongVector word = LongVector.fromArray(SPECIES, b, blo + i).lanewise(VectorOperators.LSHR, shift)
+					.and(lomask)
+					.or(LongVector.fromArray(SPECIES, b, bhi + i).lanewise(VectorOperators.LSHL, rshift).and(himask));
+			LongVector.fromArray(SPECIES, a, ap + i).lanewise(vectorOperation, word).intoArray(c, ap + i);
+		}
+		for (; i < rows; i++) {
+			final long word = (b[blo + i] >>> shift & lomask) | (b[bhi + i] << rshift & himask);
+			c[ap + i] = switch (operation) {
+				case Bitmask.OR -> a[ap + i] | word;
+				case Bitmask.AND_NOT -> a[ap + i] & ~word;
+				case Bitmask.XOR -> a[ap + i] ^ word;
+				default -> a[ap + i] & word;
+			};
+		}
+	}
+
+	/**
+	 * Stripe ap shifted right, combined with stripe app shifted left.
+	 */
+	private static LongVector shifted(final long[] a, final int ap, final int app, final int shift, final int rshift,
+			final long himask) {
+		return LongVector.fromArray(SPECIES, a, ap).lanewise(VectorOperators.LSHR, shift)
+				.or(LongVector.fromArray(SPECIES, a, app).lanewise(VectorOperators.LSHL, rshift).and(himask));
+	}
+}
@@ -0,0 +1,93 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.stream.IntStream;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmaskArenaTest {
+    private static Bitmask copyOffHeap(final BitmaskArena arena, final Bitmask bitmask) {
+        final Bitmask offHeap = arena.createBitmask(bitmask.getWidth(), bitmask.getHeight());
+        BitmaskModifier.draw(offHeap, bitmask, 0, 0);
+        return offHeap;
+    }
+
+    @Test
+    void testOffHeapMasksWorkLikeHeapMasks() {
+        try (BitmaskArena arena = new BitmaskArena()) {
+            final Bitmask a = makeRandomBitmask(200, 50, 1);
+            final Bitmask b = makeRandomBitmask(70, 30, 2);
+            final Bitmask offHeapA = copyOffHeap(arena, a);
+            final Bitmask offHeapB = copyOffHeap(arena, b);
+            assertEquals(a, offHeapA);
+            assertEquals(a.toString(), offHeapA.toString());
+            assertEquals(a.countBits(), offHeapA.countBits());
+            for (int xOffset = -80; xOffset < 210; xOffset += 7) {
+                for (int yOffset = -40; yOffset < 60; yOffset += 9) {
+                    final int area = a.overlapArea(b, xOffset, yOffset);
+                    assertEquals(area, offHeapA.overlapArea(b, xOffset, yOffset));
+                    assertEquals(area, a.overlapArea(offHeapB, xOffset, yOffset));
+                    assertEquals(area, offHeapA.overlapArea(offHeapB, xOffset, yOffset));
+                    assertEquals(area != 0, offHeapA.overlaps(offHeapB, xOffset, yOffset));
+                    assertEquals(a.overlapPos(b, xOffset, yOffset), offHeapA.overlapPos(offHeapB, xOffset, yOffset));
+                    assertEquals(a.overlapMask(b, xOffset, yOffset), offHeapA.overlapMask(offHeapB, xOffset, yOffset));
+                }
+            }
+            offHeapA.invert();
+            a.invert();
+            assertEquals(a, offHeapA);
+            offHeapA.fill();
+            assertEquals(200 * 50, offHeapA.countBits());
+            offHeapA.clearBit(3, 4);
+            assertFalse(offHeapA.getBit(3, 4));
+        }
+    }
+
+    @Test
+    void testAtomicWritesOffHeap() {
+        try (BitmaskArena arena = new BitmaskArena()) {
+            final Bitmask offHeap = arena.createBitmask(100, 40);
+            IntStream.range(0, 4).parallel().forEach(thread -> {
+                for (int y = 0; y < 40; y++) {
+                    for (int x = thread; x < 100; x += 4) {
+                        offHeap.setBitAtomic(x, y);
+                    }
+                }
+            });
+            assertEquals(100 * 40, offHeap.countBits());
+            final Bitmask sprite = makeRandomBitmask(30, 20, 4);
+            BitmaskModifier.eraseAtomic(offHeap, sprite, 50, 10);
+            final Bitmask expected = new Bitmask(100, 40);
+            expected.fill();
+            BitmaskModifier.erase(expected, sprite, 50, 10);
+            assertEquals(expected, offHeap);
+        }
+    }
+
+    @Test
+    void testMasksAreUnusableAfterClose() {
+        final BitmaskArena arena = new BitmaskArena();
+        final Bitmask bitmask = arena.createBitmask(100, 100);
+        bitmask.setBit(5, 5);
+        arena.close();
+        assertThrows(IndexOutOfBoundsException.class, () -> bitmask.getBit(5, 5));
+        assertThrows(IllegalStateException.class, () -> arena.createBitmask(10, 10));
+    }
+
+    @Test
+    void testSerializesToHeapMask() throws IOException, ClassNotFoundException {
+        try (BitmaskArena arena = new BitmaskArena()) {
+            final Bitmask offHeap = copyOffHeap(arena, makeRandomBitmask(100, 20, 3));
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(offHeap);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertEquals(offHeap, in.readObject());
+            }
+        }
+    }
+}
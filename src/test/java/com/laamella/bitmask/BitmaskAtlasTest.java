@@ -0,0 +1,107 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmaskAtlasTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testWriteAndOpen() throws IOException {
+        final Map<String, Bitmask> masks = new LinkedHashMap<>();
+        masks.put("ship", makeRandomBitmask(30, 20, 1));
+        masks.put("wide", makeRandomBitmask(200, 3, 2));
+        masks.put("étoile", makeRandomBitmask(1, 1, 3));
+        masks.put("pattern", Tools.createBitmaskFromResource("/test_pattern.txt"));
+        final Path file = directory.resolve("masks.atlas");
+        BitmaskAtlas.write(file, masks);
+
+        final BitmaskAtlas atlas = BitmaskAtlas.open(file);
+        assertEquals(masks.keySet(), atlas.getNames());
+        for (final Map.Entry<String, Bitmask> entry : masks.entrySet()) {
+            assertEquals(entry.getValue(), atlas.get(entry.getKey()));
+        }
+        assertSame(atlas.get("ship"), atlas.get("ship"));
+        assertNull(atlas.get("nothing"));
+        assertEquals(masks.get("ship").overlapArea(masks.get("wide"), 5, 7), atlas.get("ship").overlapArea(atlas.get("wide"), 5, 7));
+    }
+
+    @Test
+    void testMasksAreReadOnly() throws IOException {
+        final Path file = directory.resolve("masks.atlas");
+        BitmaskAtlas.write(file, Map.of("ship", makeRandomBitmask(30, 20, 1)));
+        final Bitmask ship = BitmaskAtlas.open(file).get("ship");
+        assertThrows(ReadOnlyBufferException.class, () -> ship.setBit(0, 0));
+        final Bitmask copy = new Bitmask(ship);
+        copy.setBit(0, 0);
+        assertTrue(copy.getBit(0, 0));
+    }
+
+    @Test
+    void testEmptyAtlas() throws IOException {
+        final Path file = directory.resolve("empty.atlas");
+        BitmaskAtlas.write(file, Map.of());
+        assertEquals(Set.of(), BitmaskAtlas.open(file).getNames());
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        final Path file = directory.resolve("other.atlas");
+        Files.writeString(file, "this is not an atlas");
+        assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+        Files.writeString(file, "BITMAS");
+        assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+    }
+
+    @Test
+    void testRejectsTruncatedFiles() throws IOException {
+        final Path file = directory.resolve("truncated.atlas");
+        BitmaskAtlas.write(file, Map.of("ship", makeRandomBitmask(30, 20, 1)));
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+        Files.write(file, Arrays.copyOf(bytes, 20));
+        assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+    }
+
+    @Test
+    void testRejectsCorruptedIndexes() throws IOException {
+        final Path file = directory.resolve("corrupted.atlas");
+        BitmaskAtlas.write(file, Map.of("ship", makeRandomBitmask(30, 20, 1)));
+        final byte[] bytes = Files.readAllBytes(file);
+        // The amount of masks is at 12, the first width at 16, its height at 20 and its position at 24.
+        assertRejected(file, bytes, 12, -1);
+        assertRejected(file, bytes, 12, Integer.MAX_VALUE);
+        assertRejected(file, bytes, 16, -30);
+        assertRejected(file, bytes, 20, -20);
+        assertRejected(file, bytes, 20, 2000);
+        for (final long position : new long[]{33, -8, bytes.length, 1L << 40, Long.MAX_VALUE - 7}) {
+            final ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            corrupted.putLong(24, position);
+            Files.write(file, corrupted.array());
+            assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+        }
+    }
+
+    private static void assertRejected(final Path file, final byte[] bytes, final int offset, final int value) throws IOException {
+        final ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        corrupted.putInt(offset, value);
+        Files.write(file, corrupted.array());
+        assertThrows(IOException.class, () -> BitmaskAtlas.open(file));
+    }
+}
@@ -0,0 +1,73 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmaskBatchTest {
+    private static final int COUNT = 3000;
+
+    private final Bitmask terrain = makeRandomBitmask(500, 300, 1);
+    private final Bitmask[] masks = new Bitmask[COUNT];
+    private final int[] xs = new int[COUNT];
+    private final int[] ys = new int[COUNT];
+
+    BitmaskBatchTest() {
+        final Random random = new Random(2);
+        final Bitmask[] sprites = {makeRandomBitmask(5, 5, 3), makeRandomBitmask(70, 10, 4), new Bitmask(8, 8)};
+        for (int i = 0; i < COUNT; i++) {
+            masks[i] = i % 97 == 0 ? null : sprites[random.nextInt(sprites.length)];
+            xs[i] = random.nextInt(700) - 100;
+            ys[i] = random.nextInt(500) - 100;
+        }
+    }
+
+    private boolean expected(final int i) {
+        return masks[i] != null && terrain.overlaps(masks[i], xs[i], ys[i]);
+    }
+
+    @Test
+    void testBitsetHits() {
+        final long[] hits = new long[COUNT / 64 + 1];
+        hits[hits.length - 1] = -1;
+        BitmaskBatch.overlaps(terrain, masks, xs, ys, COUNT, hits);
+        for (int i = 0; i < hits.length * 64; i++) {
+            assertEquals(i < COUNT && expected(i), (hits[i / 64] & 1L << i) != 0, "index " + i);
+        }
+    }
+
+    @Test
+    void testIndexHitsInParallel() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final int[] hits = new int[COUNT];
+            final int hitCount = BitmaskBatch.overlaps(terrain, masks, xs, ys, COUNT, hits, pool);
+            assertTrue(hitCount > 0 && hitCount < COUNT);
+            int next = 0;
+            for (int i = 0; i < COUNT; i++) {
+                if (expected(i)) {
+                    assertEquals(i, hits[next++]);
+                }
+            }
+            assertEquals(hitCount, next);
+            final int[] sequentialHits = new int[COUNT];
+            assertEquals(hitCount, BitmaskBatch.overlaps(terrain, masks, xs, ys, COUNT, sequentialHits));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testTooFewWords() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BitmaskBatch.overlaps(terrain, masks, xs, ys, COUNT, new long[2]));
+        final int[] hits = new int[COUNT - 1];
+        assertThrows(IllegalArgumentException.class,
+                () -> BitmaskBatch.overlaps(terrain, masks, xs, ys, COUNT, hits));
+        assertArrayEquals(new int[COUNT - 1], hits);
+    }
+}
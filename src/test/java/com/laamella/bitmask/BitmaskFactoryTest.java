@@ -4,11 +4,17 @@ import org.junit.jupiter.api.Test;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
 import java.io.IOException;
+import java.util.Random;
 
 import static com.laamella.bitmask.Tools.readStringResource;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class BitmaskFactoryTest {
@@ -34,6 +40,58 @@ public class BitmaskFactoryTest {
         assertEquals(readStringResource("/circle_with_alpha_at_1.txt"), bitmask.toString());
     }
 
+    private static BufferedImage convert(final BufferedImage image, final int type) {
+        final BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        final Graphics2D graphics = converted.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return converted;
+    }
+
+    @Test
+    void testAlphaOnAllImageTypes() throws IOException {
+        final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("/circle_with_alpha.png"));
+        final String expected = readStringResource("/circle_with_alpha_at_0.5.txt");
+        for (final int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE}) {
+            assertEquals(expected, BitmaskFactory.createBitmaskFromAlphaChannel(convert(image, type), 0.5).toString());
+        }
+    }
+
+    @Test
+    void testAlphaOfSubimage() throws IOException {
+        final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("/circle_with_alpha.png"));
+        for (final int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR}) {
+            final Bitmask whole = BitmaskFactory.createBitmaskFromAlphaChannel(convert(image, type), 0.5);
+            final Bitmask part = BitmaskFactory.createBitmaskFromAlphaChannel(convert(image, type).getSubimage(3, 5, 10, 9), 0.5);
+            for (int x = 0; x < 10; x++) {
+                for (int y = 0; y < 9; y++) {
+                    assertEquals(whole.getBit(x + 3, y + 5), part.getBit(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testAlphaOfLargeImage() {
+        final Random random = new Random(1);
+        for (final int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR}) {
+            final BufferedImage image = new BufferedImage(1100, 1000, type);
+            for (int x = 0; x < image.getWidth(); x += 1 + random.nextInt(3)) {
+                for (int y = 0; y < image.getHeight(); y += 1 + random.nextInt(3)) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            final Bitmask bitmask = BitmaskFactory.createBitmaskFromAlphaChannel(image, 0.5);
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int y = 0; y < image.getHeight(); y++) {
+                    assertEquals(image.getRGB(x, y) >>> 24 > 127, bitmask.getBit(x, y));
+                }
+            }
+        }
+    }
+
     @Test
     void testNoAlphaBreaks() throws IOException {
         final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("/color_keyed.gif"));
@@ -65,4 +123,51 @@ public class BitmaskFactoryTest {
         final Bitmask bitmask = BitmaskFactory.createBitmaskFromColorKey(image, Color.BLACK);
         assertEquals(readStringResource("/color_keyed_black.txt"), bitmask.toString());
     }
+
+    @Test
+    void testColorKeyOnAllImageTypes() throws IOException {
+        final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("/color_keyed.gif"));
+        final String expected = readStringResource("/color_keyed_red.txt");
+        final Color red = new Color(232, 20, 20);
+        for (final int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR,
+                BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+                BufferedImage.TYPE_4BYTE_ABGR_PRE}) {
+            assertEquals(expected, BitmaskFactory.createBitmaskFromColorKey(convert(image, type), red).toString());
+        }
+        final BufferedImage indexed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED,
+                (IndexColorModel) image.getColorModel());
+        indexed.setData(image.getRaster());
+        assertEquals(expected, BitmaskFactory.createBitmaskFromColorKey(indexed, red).toString());
+        assertEquals(readStringResource("/color_keyed_white.txt"),
+                BitmaskFactory.createBitmaskFromColorKey(indexed, Color.WHITE).toString());
+    }
+
+    @Test
+    void testColorKeyOfSubimage() throws IOException {
+        final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("/color_keyed.gif"));
+        final Color red = new Color(232, 20, 20);
+        for (final BufferedImage source : new BufferedImage[]{image, convert(image, BufferedImage.TYPE_INT_RGB),
+                convert(image, BufferedImage.TYPE_3BYTE_BGR)}) {
+            final Bitmask whole = BitmaskFactory.createBitmaskFromColorKey(source, red);
+            final Bitmask part = BitmaskFactory.createBitmaskFromColorKey(source.getSubimage(3, 5, 10, 9), red);
+            for (int x = 0; x < 10; x++) {
+                for (int y = 0; y < 9; y++) {
+                    assertEquals(whole.getBit(x + 3, y + 5), part.getBit(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testColorKeyOfLinearRgbImage() {
+        final DirectColorModel linear = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB), 24,
+                0xff0000, 0xff00, 0xff, 0, false, DataBuffer.TYPE_INT);
+        final BufferedImage image = new BufferedImage(linear, linear.createCompatibleWritableRaster(2, 1), false, null);
+        image.getRaster().setDataElements(0, 0, new int[]{0x808080});
+        // Keys are compared in sRGB, not to the raw pixel values.
+        final Color key = new Color(image.getRGB(0, 0));
+        assertNotEquals(new Color(0x808080), key);
+        assertEquals("oo\n", BitmaskFactory.createBitmaskFromColorKey(image, new Color(0x808080)).toString());
+        assertEquals(".o\n", BitmaskFactory.createBitmaskFromColorKey(image, key).toString());
+    }
 }
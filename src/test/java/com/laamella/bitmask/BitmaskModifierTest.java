@@ -2,10 +2,38 @@ package com.laamella.bitmask;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 import static com.laamella.bitmask.Tools.readStringResource;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class BitmaskModifierTest {
+    @Test
+    void testDrawAtomicWorksLikeDraw() {
+        final Bitmask expected = new Bitmask(300, 200);
+        final Bitmask actual = new Bitmask(300, 200);
+        final Bitmask[] sprites = new Bitmask[40];
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i] = Tools.makeRandomBitmask(20 + i * 3, 10 + i, i);
+            BitmaskModifier.draw(expected, sprites[i], i * 7 - 30, i * 5 - 20);
+        }
+        IntStream.range(0, sprites.length).parallel()
+                .forEach(i -> BitmaskModifier.drawAtomic(actual, sprites[i], i * 7 - 30, i * 5 - 20));
+        assertEquals(expected, actual);
+        assertEquals(expected.getTightBounds(), actual.getTightBounds());
+
+        final Bitmask crater = Tools.makeRandomBitmask(70, 50, 99);
+        for (int i = 0; i < 6; i++) {
+            BitmaskModifier.erase(expected, crater, i * 45 - 20, i * 30 - 10);
+        }
+        IntStream.range(0, 6).parallel()
+                .forEach(i -> BitmaskModifier.eraseAtomic(actual, crater, i * 45 - 20, i * 30 - 10));
+        assertEquals(expected, actual);
+        assertEquals(expected.overlapArea(crater, 13, 17), actual.overlapArea(crater, 13, 17));
+    }
+
     @Test
     void testScaleDown() {
         final String pattern = readStringResource("/test_pattern.txt");
@@ -32,6 +60,127 @@ public class BitmaskModifierTest {
         assertEquals(scaledPattern, actual.toString());
     }
 
+    @Test
+    void testScaleWorksLikeScalingEveryPixel() {
+        final Bitmask source = Tools.makeRandomBitmask(150, 70, 41);
+        final int[][] sizes = { { 300, 140 }, { 75, 35 }, { 450, 70 }, { 150, 23 }, { 37, 200 }, { 1, 1 }, { 64, 64 },
+                { 151, 69 }, { 300, 35 }, { 75, 140 } };
+        for (final int[] size : sizes) {
+            final Bitmask expected = new Bitmask(size[0], size[1]);
+            for (int x = 0; x < size[0]; x++) {
+                for (int y = 0; y < size[1]; y++) {
+                    if (source.getBit((int) ((x + 0.5) * (150.0 / size[0])), (int) ((y + 0.5) * (70.0 / size[1])))) {
+                        expected.setBit(x, y);
+                    }
+                }
+            }
+            final Bitmask actual = BitmaskModifier.scale(source, size[0], size[1]);
+            assertEquals(expected, actual, size[0] + "x" + size[1]);
+            assertEquals(expected.getTightBounds(), actual.getTightBounds());
+        }
+    }
+
+    @Test
+    void testRotateQuarterTurns() {
+        final Bitmask source = Tools.makeRandomBitmask(100, 30, 42);
+        final Bitmask quarter = BitmaskModifier.rotate(source, Math.PI / 2);
+        final Bitmask half = BitmaskModifier.rotate(source, -Math.PI);
+        assertEquals(30, quarter.getWidth());
+        assertEquals(100, quarter.getHeight());
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 30; y++) {
+                assertEquals(source.getBit(x, y), quarter.getBit(29 - y, x));
+                assertEquals(source.getBit(x, y), half.getBit(99 - x, 29 - y));
+            }
+        }
+        assertEquals(source, BitmaskModifier.rotate(source, 0));
+        assertEquals(source, BitmaskModifier.rotate(source, 4 * Math.PI));
+        assertEquals(source, BitmaskModifier.rotate(BitmaskModifier.rotate(quarter, Math.PI), Math.PI / 2));
+    }
+
+    @Test
+    void testRotateWorksLikeRotatingEveryPixel() {
+        final Bitmask source = Tools.makeRandomBitmask(90, 50, 43);
+        for (int x = 0; x < 90; x++) {
+            for (int y = 0; y < 50; y++) {
+                if (x < 10 || y > 45) {
+                    source.clearBit(x, y);
+                }
+            }
+        }
+        for (final double angle : new double[] { 0.3, -1.2, 2.0, 3.0, -2.5, Math.PI / 4 }) {
+            final double cos = Math.cos(angle);
+            final double sin = Math.sin(angle);
+            final Bitmask actual = BitmaskModifier.rotate(source, angle);
+            final int width = actual.getWidth();
+            final int height = actual.getHeight();
+            assertEquals((int) Math.ceil(Math.abs(90 * cos) + Math.abs(50 * sin)), width);
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    // Rotate the center of the pixel back, around the center of the masks.
+                    final double dx = 0.5 - width / 2.0;
+                    final double dy = y + 0.5 - height / 2.0;
+                    final int sourceX = (int) Math.floor(cos * dx + sin * dy + 45 + x * cos);
+                    final int sourceY = (int) Math.floor(-sin * dx + cos * dy + 25 - x * sin);
+                    final boolean expected = sourceX >= 0 && sourceX < 90 && sourceY >= 0 && sourceY < 50
+                            && source.getBit(sourceX, sourceY);
+                    assertEquals(expected, actual.getBit(x, y), angle + " at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testConvolveMatchesOverlaps() {
+        final Bitmask level = Tools.makeRandomBitmask(300, 60, 51);
+        for (int x = 0; x < 300; x++) {
+            for (int y = 0; y < 60; y++) {
+                if ((x / 20 + y / 15) % 3 != 0) {
+                    level.clearBit(x, y);
+                }
+            }
+        }
+        final Bitmask unit = Tools.makeRandomBitmask(13, 7, 52);
+        unit.setBit(0, 0);
+        unit.setBit(1, 0);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final int[] offset : new int[][] { { 0, 0 }, { 5, -3 }, { -20, 9 } }) {
+                final Bitmask expected = new Bitmask(330, 70);
+                for (int x = 0; x < 330; x++) {
+                    for (int y = 0; y < 70; y++) {
+                        if (level.overlaps(unit, x - offset[0] - 12, y - offset[1] - 6)) {
+                            expected.setBit(x, y);
+                        }
+                    }
+                }
+                final Bitmask serial = new Bitmask(330, 70);
+                BitmaskModifier.convolve(level, unit, serial, offset[0], offset[1]);
+                assertEquals(expected, serial, "Offset " + offset[0] + "," + offset[1]);
+                final Bitmask parallel = new Bitmask(330, 70);
+                BitmaskModifier.convolve(level, unit, parallel, offset[0], offset[1], pool);
+                assertEquals(expected, parallel, "Offset " + offset[0] + "," + offset[1]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testConvolveLeavesTheInputAlone() {
+        final Bitmask a = Tools.makeRandomBitmask(40, 40, 53);
+        final Bitmask copy = new Bitmask(a);
+        final Bitmask b = new Bitmask(5, 5);
+        b.fill();
+        final Bitmask o = new Bitmask(44, 44);
+        BitmaskModifier.convolve(a, b, o, 0, 0);
+        assertEquals(copy, a);
+        final int count = o.countBits();
+        assertTrue(count > a.countBits());
+        BitmaskModifier.convolve(a, new Bitmask(5, 5), o, 0, 0);
+        assertEquals(count, o.countBits());
+    }
+
     @Test
     void testScaleTo0() {
         final String pattern = readStringResource("/test_pattern.txt");
@@ -89,4 +238,68 @@ public class BitmaskModifierTest {
         System.out.println(bitmask1);
 //        assertEquals(expected, bitmask1);
     }
+
+    @Test
+    void testDrawEraseXorAndOnAllEdges() {
+        final int[][] sizes = {{10, 10}, {64, 20}, {70, 20}, {130, 15}};
+        for (final int[] aSize : sizes) {
+            for (final int[] bSize : sizes) {
+                final Bitmask b = Tools.makeRandomBitmask(bSize[0], bSize[1], 2);
+                for (int xOffset = -bSize[0] - 1; xOffset <= aSize[0] + 1; xOffset += 5) {
+                    for (int yOffset = -bSize[1] - 1; yOffset <= aSize[1] + 1; yOffset += 2) {
+                        final Bitmask original = Tools.makeRandomBitmask(aSize[0], aSize[1], 1);
+                        final Bitmask drawn = new Bitmask(original);
+                        final Bitmask erased = new Bitmask(original);
+                        final Bitmask xored = new Bitmask(original);
+                        final Bitmask anded = new Bitmask(original);
+                        BitmaskModifier.draw(drawn, b, xOffset, yOffset);
+                        BitmaskModifier.erase(erased, b, xOffset, yOffset);
+                        BitmaskModifier.xor(xored, b, xOffset, yOffset);
+                        BitmaskModifier.and(anded, b, xOffset, yOffset);
+                        for (int x = 0; x < original.getWidth(); x++) {
+                            for (int y = 0; y < original.getHeight(); y++) {
+                                final int bx = x - xOffset;
+                                final int by = y - yOffset;
+                                final boolean aBit = original.getBit(x, y);
+                                final boolean bBit = bx >= 0 && by >= 0 && bx < b.getWidth() && by < b.getHeight()
+                                        && b.getBit(bx, by);
+                                assertEquals(aBit | bBit, drawn.getBit(x, y));
+                                assertEquals(aBit & !bBit, erased.getBit(x, y));
+                                assertEquals(aBit ^ bBit, xored.getBit(x, y));
+                                assertEquals(aBit & bBit, anded.getBit(x, y));
+                            }
+                        }
+                        final Bitmask full = new Bitmask(original);
+                        full.fill();
+                        BitmaskModifier.draw(full, b, xOffset, yOffset);
+                        assertEquals(original.getWidth() * original.getHeight(), full.countBits(),
+                                "draw must not set bits outside the mask");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTrim() {
+        final Bitmask bitmask = new Bitmask(200, 50);
+        BitmaskModifier.draw(bitmask, Tools.makeRandomBitmask(30, 20, 14), 90, 17);
+        final Rectangle bounds = bitmask.getTightBounds();
+        final TrimmedBitmask trimmed = BitmaskModifier.trim(bitmask);
+        assertEquals(bounds.x, trimmed.x());
+        assertEquals(bounds.y, trimmed.y());
+        assertEquals(bounds.width, trimmed.bitmask().getWidth());
+        assertEquals(bounds.height, trimmed.bitmask().getHeight());
+        final Bitmask restored = new Bitmask(200, 50);
+        BitmaskModifier.draw(restored, trimmed.bitmask(), trimmed.x(), trimmed.y());
+        assertEquals(bitmask, restored);
+    }
+
+    @Test
+    void testTrimEmptyMask() {
+        final TrimmedBitmask trimmed = BitmaskModifier.trim(new Bitmask(20, 20));
+        assertEquals(1, trimmed.bitmask().getWidth());
+        assertEquals(1, trimmed.bitmask().getHeight());
+        assertEquals(0, trimmed.bitmask().countBits());
+    }
 }
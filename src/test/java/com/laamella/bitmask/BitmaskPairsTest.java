@@ -0,0 +1,95 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmaskPairsTest {
+    private static final int COUNT = 300;
+
+    private final Bitmask[] masks = new Bitmask[COUNT];
+    private final int[] xs = new int[COUNT];
+    private final int[] ys = new int[COUNT];
+
+    BitmaskPairsTest() {
+        final Random random = new Random(1);
+        for (int i = 0; i < COUNT; i++) {
+            masks[i] = i % 50 == 7 ? null : makeRandomBitmask(10 + random.nextInt(60), 10 + random.nextInt(30), i);
+            xs[i] = random.nextInt(800) - 400;
+            ys[i] = random.nextInt(600) - 300;
+        }
+    }
+
+    private static List<BitmaskPairs.Contact> withThreads(final int threads,
+                                                          final Function<ForkJoinPool, List<BitmaskPairs.Contact>> find) {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return find.apply(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testAllPairs() {
+        final List<BitmaskPairs.Contact> contacts = BitmaskPairs.findContacts(masks, xs, ys, COUNT, null);
+        int next = 0;
+        for (int first = 0; first < COUNT; first++) {
+            for (int second = first + 1; second < COUNT; second++) {
+                if (masks[first] != null && masks[second] != null
+                        && masks[first].overlaps(masks[second], xs[second] - xs[first], ys[second] - ys[first])) {
+                    final BitmaskPairs.Contact contact = contacts.get(next++);
+                    assertEquals(first, contact.first());
+                    assertEquals(second, contact.second());
+                    assertTrue(masks[first].getBit(contact.x() - xs[first], contact.y() - ys[first]));
+                    assertTrue(masks[second].getBit(contact.x() - xs[second], contact.y() - ys[second]));
+                }
+            }
+        }
+        assertEquals(contacts.size(), next);
+        assertTrue(next > 0);
+    }
+
+    @Test
+    void testSameContactsForEveryThreadCount() {
+        final List<BitmaskPairs.Contact> expected = BitmaskPairs.findContacts(masks, xs, ys, COUNT, null);
+        for (final int threads : new int[]{1, 3, 8}) {
+            assertEquals(expected, withThreads(threads, pool -> BitmaskPairs.findContacts(masks, xs, ys, COUNT, pool)));
+        }
+    }
+
+    @Test
+    void testTwoSets() {
+        final int otherCount = 40;
+        final Bitmask[] others = new Bitmask[otherCount];
+        final int[] otherXs = new int[otherCount];
+        final int[] otherYs = new int[otherCount];
+        for (int i = 0; i < otherCount; i++) {
+            others[i] = makeRandomBitmask(100, 100, 1000 + i);
+            otherXs[i] = i * 20 - 400;
+            otherYs[i] = i * 15 - 300;
+        }
+        final List<BitmaskPairs.Contact> expected =
+                BitmaskPairs.findContacts(masks, xs, ys, COUNT, others, otherXs, otherYs, otherCount, null);
+        int next = 0;
+        for (int first = 0; first < COUNT; first++) {
+            for (int second = 0; second < otherCount; second++) {
+                if (masks[first] != null
+                        && masks[first].overlaps(others[second], otherXs[second] - xs[first], otherYs[second] - ys[first])) {
+                    assertEquals(first, expected.get(next).first());
+                    assertEquals(second, expected.get(next).second());
+                    next++;
+                }
+            }
+        }
+        assertEquals(expected.size(), next);
+        assertEquals(expected, withThreads(5,
+                pool -> BitmaskPairs.findContacts(masks, xs, ys, COUNT, others, otherXs, otherYs, otherCount, pool)));
+    }
+}
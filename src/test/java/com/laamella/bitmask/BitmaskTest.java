@@ -2,6 +2,9 @@ package com.laamella.bitmask;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.Rectangle;
+import java.util.stream.IntStream;
+
 import static com.laamella.bitmask.Tools.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,6 +26,11 @@ public class BitmaskTest {
         assertEquals(6, getBits(new Bitmask(65, 3)).length);
     }
 
+    @Test
+    void testTooLargeBitmaskIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Bitmask(1 << 20, 200000));
+    }
+
     @Test
     void testDataSize4() {
         assertEquals(6, getBits(new Bitmask(128, 3)).length);
@@ -222,6 +230,364 @@ public class BitmaskTest {
         assertTrue(bitMask2.overlaps(bitMask1, 1, 0));
     }
 
+    @Test
+    void testOverlapAreaOnAllPaths() {
+        final int[][] sizes = {{10, 10}, {70, 20}, {130, 15}, {200, 7}};
+        for (final int[] aSize : sizes) {
+            for (final int[] bSize : sizes) {
+                final Bitmask a = makeRandomBitmask(aSize[0], aSize[1], 1);
+                final Bitmask b = makeRandomBitmask(bSize[0], bSize[1], 2);
+                for (int xOffset = -bSize[0] - 1; xOffset <= aSize[0] + 1; xOffset += 3) {
+                    for (int yOffset = -bSize[1] - 1; yOffset <= aSize[1] + 1; yOffset++) {
+                        assertEquals(countOverlappingPixels(a, b, xOffset, yOffset), a.overlapArea(b, xOffset, yOffset),
+                                "offset " + xOffset + "," + yOffset);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testOverlapAreaOfInvertedPatternIsZero() {
+        final Bitmask bitMask1 = makeOnOffPatternBitmask(1000, 10);
+        final Bitmask bitMask2 = makeOnOffPatternBitmask(1000, 10);
+        bitMask2.invert();
+        assertEquals(0, bitMask2.overlapArea(bitMask1, 64, 0));
+        assertEquals(bitMask1.countBits(), bitMask1.overlapArea(bitMask1, 0, 0));
+    }
+
+    @Test
+    void testOverlapPosOnAllPaths() {
+        final int[][] sizes = {{10, 10}, {70, 20}, {130, 15}, {200, 7}};
+        for (final int[] aSize : sizes) {
+            for (final int[] bSize : sizes) {
+                final Bitmask a = makeRandomBitmask(aSize[0], aSize[1], 3);
+                final Bitmask b = makeRandomBitmask(bSize[0], bSize[1], 4);
+                for (int xOffset = -bSize[0] - 1; xOffset <= aSize[0] + 1; xOffset += 3) {
+                    for (int yOffset = -bSize[1] - 1; yOffset <= aSize[1] + 1; yOffset++) {
+                        final long pos = a.overlapPos(b, xOffset, yOffset);
+                        if (countOverlappingPixels(a, b, xOffset, yOffset) == 0) {
+                            assertEquals(Bitmask.NO_OVERLAP, pos);
+                        } else {
+                            final int x = Bitmask.overlapPosX(pos);
+                            final int y = Bitmask.overlapPosY(pos);
+                            assertTrue(a.getBit(x, y) && b.getBit(x - xOffset, y - yOffset),
+                                    "offset " + xOffset + "," + yOffset);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testOverlapPosFindsSinglePixel() {
+        final Bitmask bitMask1 = new Bitmask(200, 100);
+        final Bitmask bitMask2 = new Bitmask(100, 100);
+        bitMask1.setBit(150, 70);
+        bitMask2.fill();
+        final long pos = bitMask1.overlapPos(bitMask2, 67, 3);
+        assertEquals(150, Bitmask.overlapPosX(pos));
+        assertEquals(70, Bitmask.overlapPosY(pos));
+        final long swappedPos = bitMask2.overlapPos(bitMask1, -67, -3);
+        assertEquals(150 - 67, Bitmask.overlapPosX(swappedPos));
+        assertEquals(70 - 3, Bitmask.overlapPosY(swappedPos));
+    }
+
+    @Test
+    void testOverlapMaskOnAllPaths() {
+        final int[][] sizes = {{10, 10}, {64, 20}, {70, 20}, {130, 15}, {200, 7}};
+        for (final int[] aSize : sizes) {
+            for (final int[] bSize : sizes) {
+                final Bitmask a = makeRandomBitmask(aSize[0], aSize[1], 5);
+                final Bitmask b = makeRandomBitmask(bSize[0], bSize[1], 6);
+                final Bitmask c = makeRandomBitmask(aSize[0], aSize[1], 7);
+                for (int xOffset = -bSize[0] - 1; xOffset <= aSize[0] + 1; xOffset += 3) {
+                    for (int yOffset = -bSize[1] - 1; yOffset <= aSize[1] + 1; yOffset++) {
+                        a.overlapMask(b, c, xOffset, yOffset);
+                        for (int x = 0; x < a.getWidth(); x++) {
+                            for (int y = 0; y < a.getHeight(); y++) {
+                                final int bx = x - xOffset;
+                                final int by = y - yOffset;
+                                final boolean expected = a.getBit(x, y) && bx >= 0 && by >= 0
+                                        && bx < b.getWidth() && by < b.getHeight() && b.getBit(bx, by);
+                                assertEquals(expected, c.getBit(x, y), "offset " + xOffset + "," + yOffset);
+                            }
+                        }
+                        assertEquals(a.overlapArea(b, xOffset, yOffset), c.countBits());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testOverlapMaskInPlace() {
+        final Bitmask a = makeRandomBitmask(100, 30, 8);
+        final Bitmask b = makeRandomBitmask(70, 40, 9);
+        final Bitmask expected = a.overlapMask(b, 33, -5);
+        a.overlapMask(b, a, 33, -5);
+        assertEquals(expected, a);
+    }
+
+    @Test
+    void testOverlapMaskRejectsWrongSize() {
+        final Bitmask a = new Bitmask(10, 10);
+        assertThrows(IllegalArgumentException.class, () -> a.overlapMask(a, new Bitmask(10, 11), 0, 0));
+    }
+
+    @Test
+    void testKernelsOnTallMasks() {
+        // Tall enough for the vector kernels, when they are available, including the loop tails.
+        final Bitmask a = makeRandomBitmask(200, 301, 10);
+        final Bitmask b = makeRandomBitmask(130, 157, 11);
+        final Bitmask empty = new Bitmask(130, 157);
+        for (final int[] offset : new int[][]{{0, 0}, {64, 13}, {3, -7}, {70, 150}, {-5, 3}, {-64, -100}}) {
+            final int xOffset = offset[0];
+            final int yOffset = offset[1];
+            assertEquals(countOverlappingPixels(a, b, xOffset, yOffset), a.overlapArea(b, xOffset, yOffset));
+            assertTrue(a.overlaps(b, xOffset, yOffset));
+            assertFalse(a.overlaps(empty, xOffset, yOffset));
+            final Bitmask drawn = new Bitmask(a);
+            BitmaskModifier.draw(drawn, b, xOffset, yOffset);
+            assertEquals(a.countBits() + b.countBits() - a.overlapArea(b, xOffset, yOffset) - countOutside(a, b, xOffset, yOffset),
+                    drawn.countBits());
+        }
+    }
+
+    @Test
+    void testKernelsSeeChangesAfterTheFirstQuery() {
+        // Tall enough to get occupancy summaries, which have to follow the changes.
+        final Bitmask a = new Bitmask(200, 300);
+        final Bitmask b = new Bitmask(100, 120);
+        b.setBit(10, 5);
+        BitmaskModifier.draw(b, makeRandomBitmask(20, 20, 15), 60, 90);
+        assertFalse(a.overlaps(b, 50, 50));
+        a.setBit(60, 55);
+        assertTrue(a.overlaps(b, 50, 50));
+        assertEquals(60, Bitmask.overlapPosX(a.overlapPos(b, 50, 50)));
+        a.clearBit(60, 55);
+        assertFalse(a.overlaps(b, 50, 50));
+        BitmaskModifier.draw(a, makeRandomBitmask(40, 40, 16), 105, 135);
+        assertEquals(countOverlappingPixels(a, b, 50, 50), a.overlapArea(b, 50, 50));
+        assertTrue(a.overlaps(b, 50, 50));
+        BitmaskModifier.xor(a, a, 0, 0);
+        assertFalse(a.overlaps(b, 50, 50));
+        a.invert();
+        assertEquals(b.countBits(), a.overlapArea(b, 50, 50));
+        a.clear();
+        assertEquals(0, a.overlapArea(b, 50, 50));
+        a.fill();
+        assertEquals(b.countBits(), a.overlapArea(b, 50, 50));
+        for (int yOffset = -119; yOffset < 300; yOffset += 11) {
+            final Bitmask sparse = new Bitmask(200, 300);
+            BitmaskModifier.draw(sparse, makeRandomBitmask(30, 70, yOffset), 70, 130);
+            assertEquals(countOverlappingPixels(sparse, b, 33, yOffset), sparse.overlapArea(b, 33, yOffset));
+            assertEquals(countOverlappingPixels(sparse, b, 64, yOffset) > 0, sparse.overlaps(b, 64, yOffset));
+        }
+    }
+
+    private static int countOutside(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+        int count = 0;
+        for (int x = 0; x < b.getWidth(); x++) {
+            for (int y = 0; y < b.getHeight(); y++) {
+                final int ax = x + xOffset;
+                final int ay = y + yOffset;
+                if (b.getBit(x, y) && (ax < 0 || ay < 0 || ax >= a.getWidth() || ay >= a.getHeight())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testTightBoundsFollowChanges() {
+        final Bitmask bitmask = new Bitmask(200, 50);
+        assertTrue(bitmask.getTightBounds().isEmpty());
+        bitmask.setBit(70, 10);
+        bitmask.setBit(130, 40);
+        assertEquals(new Rectangle(70, 10, 61, 31), bitmask.getTightBounds());
+        bitmask.clearBit(130, 40);
+        assertEquals(new Rectangle(70, 10, 1, 1), bitmask.getTightBounds());
+        BitmaskModifier.draw(bitmask, makeOnOffPatternBitmask(10, 10), 195, -5);
+        assertEquals(new Rectangle(70, 0, 130, 11), bitmask.getTightBounds());
+        BitmaskModifier.erase(bitmask, bitmask, 0, 0);
+        assertTrue(bitmask.getTightBounds().isEmpty());
+        bitmask.fill();
+        assertEquals(new Rectangle(0, 0, 200, 50), bitmask.getTightBounds());
+        bitmask.invert();
+        assertTrue(bitmask.getTightBounds().isEmpty());
+    }
+
+    @Test
+    void testKernelsOnSparseMasks() {
+        // Small blobs far from the origin, so the kernels only scan part of the masks.
+        final Bitmask a = new Bitmask(300, 100);
+        final Bitmask b = new Bitmask(150, 80);
+        BitmaskModifier.draw(a, makeRandomBitmask(40, 20, 12), 100, 30);
+        BitmaskModifier.draw(b, makeRandomBitmask(30, 25, 13), 70, 40);
+        for (int xOffset = -150; xOffset <= 300; xOffset += 7) {
+            for (int yOffset = -80; yOffset <= 100; yOffset += 5) {
+                final int expected = countOverlappingPixels(a, b, xOffset, yOffset);
+                assertEquals(expected, a.overlapArea(b, xOffset, yOffset));
+                assertEquals(expected > 0, a.overlaps(b, xOffset, yOffset));
+                final long pos = a.overlapPos(b, xOffset, yOffset);
+                assertEquals(expected > 0, pos != Bitmask.NO_OVERLAP);
+                if (pos != Bitmask.NO_OVERLAP) {
+                    final int x = Bitmask.overlapPosX(pos);
+                    final int y = Bitmask.overlapPosY(pos);
+                    assertTrue(a.getBit(x, y) && b.getBit(x - xOffset, y - yOffset));
+                }
+                assertEquals(expected, a.overlapMask(b, xOffset, yOffset).countBits());
+            }
+        }
+    }
+
+    @Test
+    void testFrozenMaskCannotChange() {
+        final Bitmask bitmask = makeRandomBitmask(100, 100, 17);
+        final Bitmask other = makeRandomBitmask(10, 10, 18);
+        assertSame(bitmask, bitmask.freeze());
+        assertTrue(bitmask.isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> bitmask.setBit(1, 1));
+        assertThrows(UnsupportedOperationException.class, () -> bitmask.clearBit(1, 1));
+        assertThrows(UnsupportedOperationException.class, bitmask::clear);
+        assertThrows(UnsupportedOperationException.class, bitmask::fill);
+        assertThrows(UnsupportedOperationException.class, bitmask::invert);
+        assertThrows(UnsupportedOperationException.class, () -> BitmaskModifier.draw(bitmask, other, 5, 5));
+        assertThrows(UnsupportedOperationException.class, () -> bitmask.overlapMask(other, bitmask, 5, 5));
+        assertEquals(countOverlappingPixels(bitmask, other, 5, 5), bitmask.overlapArea(other, 5, 5));
+        final Bitmask thawed = new Bitmask(bitmask);
+        assertFalse(thawed.isFrozen());
+        thawed.setBit(1, 1);
+        assertTrue(thawed.getBit(1, 1));
+    }
+
+    @Test
+    void testAtomicBitsFromManyThreads() {
+        final Bitmask bitmask = new Bitmask(130, 70);
+        bitmask.getTightBounds();
+        // Every thread sets every eighth bit, so all threads write the same words.
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int y = 0; y < 70; y++) {
+                for (int x = thread; x < 130; x += 8) {
+                    bitmask.setBitAtomic(x, y);
+                }
+            }
+        });
+        assertEquals(130 * 70, bitmask.countBits());
+        assertEquals(new Rectangle(0, 0, 130, 70), bitmask.getTightBounds());
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int y = 0; y < 70; y++) {
+                for (int x = thread; x < 130; x += 8) {
+                    if (thread != 3) {
+                        bitmask.clearBitAtomic(x, y);
+                    }
+                }
+            }
+        });
+        for (int y = 0; y < 70; y++) {
+            for (int x = 0; x < 130; x++) {
+                assertEquals(x % 8 == 3, bitmask.getBit(x, y));
+            }
+        }
+        assertEquals(new Rectangle(3, 0, 121, 70), bitmask.getTightBounds());
+    }
+
+    @Test
+    void testSweepFindsFirstContact() {
+        final Bitmask terrain = makeRandomBitmask(200, 150, 21);
+        for (int x = 0; x < 200; x++) {
+            for (int y = 0; y < 150; y++) {
+                if (x < 90 || y < 40 || (x - 140) * (x - 140) + (y - 90) * (y - 90) > 900) {
+                    terrain.clearBit(x, y);
+                }
+            }
+        }
+        final Bitmask bullet = makeRandomBitmask(70, 9, 22);
+        final java.util.Random random = new java.util.Random(23);
+        for (int i = 0; i < 300; i++) {
+            final int x = random.nextInt(320) - 100;
+            final int y = random.nextInt(200) - 30;
+            final int dx = random.nextInt(300) - 150;
+            final int dy = random.nextInt(200) - 100;
+            int expected = Bitmask.NO_CONTACT;
+            for (int step = 0; step <= Math.abs(dx) + Math.abs(dy); step++) {
+                if (terrain.overlaps(bullet, x + Bitmask.sweepX(step, dx, dy), y + Bitmask.sweepY(step, dx, dy))) {
+                    expected = step;
+                    break;
+                }
+            }
+            assertEquals(expected, terrain.sweep(bullet, x, y, dx, dy), "From " + x + "," + y + " by " + dx + "," + dy);
+        }
+    }
+
+    @Test
+    void testSweepDoesNotTunnel() {
+        final Bitmask wall = new Bitmask(100, 100);
+        for (int y = 0; y < 100; y++) {
+            wall.setBit(50, y);
+        }
+        final Bitmask bullet = new Bitmask(1, 1);
+        bullet.setBit(0, 0);
+        assertFalse(wall.overlaps(bullet, 10, 20));
+        assertFalse(wall.overlaps(bullet, 90, 60));
+        final int step = wall.sweep(bullet, 10, 20, 80, 40);
+        assertEquals(50, 10 + Bitmask.sweepX(step, 80, 40));
+        assertEquals(Bitmask.NO_CONTACT, wall.sweep(bullet, 10, 20, 30, 70));
+        assertEquals(0, wall.sweep(bullet, 50, 20, 0, 0));
+        assertEquals(80, Bitmask.sweepX(120, 80, -40));
+        assertEquals(-40, Bitmask.sweepY(120, 80, -40));
+    }
+
+    @Test
+    void testOverlapResponseMatchesAreas() {
+        final Bitmask a = makeRandomBitmask(150, 80, 31);
+        final Bitmask b = makeRandomBitmask(70, 30, 32);
+        for (int x = -75; x < 155; x += 7) {
+            for (int y = -35; y < 85; y += 6) {
+                final OverlapResponse response = a.overlapResponse(b, x, y);
+                assertEquals(a.overlapArea(b, x, y), response.area());
+                assertEquals(a.overlapArea(b, x + 1, y) - a.overlapArea(b, x - 1, y), response.gradientX());
+                assertEquals(a.overlapArea(b, x, y + 1) - a.overlapArea(b, x, y - 1), response.gradientY());
+                if (response.area() == 0) {
+                    assertEquals(0, response.separationX());
+                    assertEquals(0, response.separationY());
+                    continue;
+                }
+                final int distance = Math.abs(response.separationX()) + Math.abs(response.separationY());
+                assertTrue(response.separationX() == 0 || response.separationY() == 0);
+                assertFalse(a.overlaps(b, x + response.separationX(), y + response.separationY()));
+                for (int shorter = 1; shorter < distance; shorter++) {
+                    assertTrue(a.overlaps(b, x + shorter, y));
+                    assertTrue(a.overlaps(b, x - shorter, y));
+                    assertTrue(a.overlaps(b, x, y + shorter));
+                    assertTrue(a.overlaps(b, x, y - shorter));
+                }
+            }
+        }
+        assertEquals(OverlapResponse.NONE, a.overlapResponse(b, 500, 0));
+    }
+
+    @Test
+    void testOverlapResponsePushesOutOfTheGround() {
+        final Bitmask ground = new Bitmask(200, 100);
+        for (int x = 0; x < 200; x++) {
+            for (int y = 60; y < 100; y++) {
+                ground.setBit(x, y);
+            }
+        }
+        final Bitmask player = new Bitmask(10, 20);
+        player.fill();
+        final OverlapResponse response = ground.overlapResponse(player, 100, 43);
+        assertEquals(10 * 3, response.area());
+        assertEquals(0, response.gradientX());
+        assertEquals(20, response.gradientY());
+        assertEquals(0, response.separationX());
+        assertEquals(-3, response.separationY());
+    }
+
     @Test
     void sillyBenchmark() {
         final Bitmask bitMask1 = makeOnOffPatternBitmask(100, 100);
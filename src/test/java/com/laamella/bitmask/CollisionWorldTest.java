@@ -0,0 +1,87 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CollisionWorldTest {
+    private static Set<List<Integer>> findCollisionsTheSlowWay(final CollisionWorld world, final List<Integer> bodies) {
+        final Set<List<Integer>> collisions = new HashSet<>();
+        for (final int a : bodies) {
+            for (final int b : bodies) {
+                if (a < b && world.getMask(a).overlaps(world.getMask(b), world.getX(b) - world.getX(a), world.getY(b) - world.getY(a))) {
+                    collisions.add(List.of(a, b));
+                }
+            }
+        }
+        return collisions;
+    }
+
+    private static Set<List<Integer>> findCollisions(final CollisionWorld world) {
+        final Set<List<Integer>> collisions = new HashSet<>();
+        world.findCollisions((a, b) -> assertTrue(collisions.add(List.of(a, b)), "pair reported twice"));
+        return collisions;
+    }
+
+    @Test
+    void testFindsSameCollisionsAsAllPairs() {
+        final Random random = new Random(1);
+        final CollisionWorld world = new CollisionWorld(32);
+        final List<Integer> bodies = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            final Bitmask mask = Tools.makeRandomBitmask(1 + random.nextInt(80), 1 + random.nextInt(80), i);
+            bodies.add(world.add(mask, random.nextInt(600) - 300, random.nextInt(600) - 300));
+        }
+        assertEquals(300, world.size());
+        final Set<List<Integer>> expected = findCollisionsTheSlowWay(world, bodies);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, findCollisions(world));
+
+        for (int step = 0; step < 5; step++) {
+            for (final int body : bodies) {
+                world.move(body, world.getX(body) + random.nextInt(41) - 20, world.getY(body) + random.nextInt(41) - 20);
+            }
+            assertEquals(findCollisionsTheSlowWay(world, bodies), findCollisions(world));
+        }
+    }
+
+    @Test
+    void testRemoveAndReuse() {
+        final Random random = new Random(2);
+        final CollisionWorld world = new CollisionWorld(16);
+        final List<Integer> bodies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            bodies.add(world.add(Tools.makeRandomBitmask(20, 20, i), random.nextInt(200), random.nextInt(200)));
+        }
+        for (int i = 0; i < 100; i++) {
+            world.remove(bodies.remove(random.nextInt(bodies.size())));
+        }
+        assertEquals(100, world.size());
+        assertEquals(findCollisionsTheSlowWay(world, bodies), findCollisions(world));
+        for (int i = 0; i < 50; i++) {
+            final int body = world.add(Tools.makeRandomBitmask(40, 10, i), random.nextInt(200), random.nextInt(200));
+            assertFalse(bodies.contains(body));
+            bodies.add(body);
+        }
+        world.update(bodies.get(0), Tools.makeRandomBitmask(150, 150, 3), 20, 20);
+        assertEquals(findCollisionsTheSlowWay(world, bodies), findCollisions(world));
+        assertThrows(IllegalArgumentException.class, () -> world.remove(1000));
+    }
+
+    @Test
+    void testFindCollisionsWithMask() {
+        final CollisionWorld world = new CollisionWorld(10);
+        final Bitmask square = new Bitmask(30, 30);
+        square.fill();
+        final int a = world.add(square, 0, 0);
+        final int b = world.add(square, 100, 0);
+        world.add(square, -100, -100);
+        final Set<Integer> found = new HashSet<>();
+        final Bitmask probe = new Bitmask(80, 5);
+        probe.fill();
+        world.findCollisions(probe, 25, 10, body -> assertTrue(found.add(body)));
+        assertEquals(Set.of(a, b), found);
+    }
+}
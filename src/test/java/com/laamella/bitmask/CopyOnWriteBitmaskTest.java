@@ -0,0 +1,89 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.laamella.bitmask.Tools.countOverlappingPixels;
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyOnWriteBitmaskTest {
+    @Test
+    void testWorksLikeABitmask() {
+        final Bitmask reference = makeRandomBitmask(300, 200, 1);
+        final CopyOnWriteBitmask world = new CopyOnWriteBitmask(reference, 64);
+        final Bitmask crater = makeRandomBitmask(50, 40, 2);
+        world.erase(crater, 40, 150);
+        BitmaskModifier.erase(reference, crater, 40, 150);
+        world.draw(crater, 270, -10);
+        BitmaskModifier.draw(reference, crater, 270, -10);
+        world.setBit(299, 199);
+        reference.setBit(299, 199);
+        world.clearBit(0, 0);
+        reference.clearBit(0, 0);
+        final CopyOnWriteBitmask.Snapshot snapshot = world.snapshot();
+        assertEquals(reference, snapshot.toBitmask());
+        final Bitmask sprite = makeRandomBitmask(70, 30, 3);
+        for (int x = -80; x < 310; x += 9) {
+            for (int y = -40; y < 210; y += 7) {
+                final int expected = countOverlappingPixels(reference, sprite, x, y);
+                assertEquals(expected, snapshot.overlapArea(sprite, x, y));
+                assertEquals(expected > 0, snapshot.overlaps(sprite, x, y));
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotsDoNotChange() {
+        final CopyOnWriteBitmask world = new CopyOnWriteBitmask(100, 100, 64);
+        final CopyOnWriteBitmask.Snapshot before = world.snapshot();
+        world.setBit(10, 10);
+        assertFalse(before.getBit(10, 10));
+        assertTrue(world.snapshot().getBit(10, 10));
+        assertEquals(new Bitmask(100, 100), before.toBitmask());
+    }
+
+    @Test
+    void testNothingChangesNothingIsPublished() {
+        final CopyOnWriteBitmask world = new CopyOnWriteBitmask(200, 200, 64);
+        world.setBit(10, 10);
+        final CopyOnWriteBitmask.Snapshot before = world.snapshot();
+        world.setBit(10, 10);
+        world.clearBit(20, 20);
+        world.draw(new Bitmask(300, 300), -50, -50);
+        final Bitmask corner = new Bitmask(100, 100);
+        corner.setBit(99, 99);
+        world.draw(corner, 150, 150);
+        assertSame(before, world.snapshot());
+        world.draw(corner, 50, 50);
+        assertTrue(world.snapshot().getBit(149, 149));
+    }
+
+    @Test
+    void testReadersSeeWholeChanges() throws InterruptedException {
+        final CopyOnWriteBitmask world = new CopyOnWriteBitmask(256, 256, 64);
+        final Bitmask block = new Bitmask(100, 100);
+        block.fill();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                // The block is always drawn or erased as a whole, over four tiles.
+                final int area = world.snapshot().overlapArea(block, 50, 50);
+                if (area != 0 && area != 100 * 100) {
+                    failure.set("Saw half a change: " + area);
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2000; i++) {
+            world.draw(block, 50, 50);
+            world.erase(block, 50, 50);
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,32 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RotatedBitmaskCacheTest {
+    @Test
+    void testAnglesAreRoundedToSteps() {
+        final Bitmask bitmask = makeRandomBitmask(40, 20, 1);
+        final RotatedBitmaskCache cache = new RotatedBitmaskCache(bitmask, 16);
+        assertSame(bitmask, cache.get(0.1));
+        assertSame(bitmask, cache.get(2 * Math.PI));
+        assertEquals(4, cache.getStep(Math.PI / 2 + 0.1));
+        assertEquals(12, cache.getStep(-Math.PI / 2));
+        assertEquals(BitmaskModifier.rotate(bitmask, Math.PI / 2), cache.get(Math.PI / 2 + 0.1));
+        assertEquals(BitmaskModifier.rotate(bitmask, cache.getAngle(3)), cache.getRotation(3));
+        assertSame(cache.get(Math.PI / 2), cache.getRotation(4));
+        assertTrue(cache.getRotation(4).isFrozen());
+        assertEquals(3, cache.getCachedStepCount());
+    }
+
+    @Test
+    void testRotationsOverBudgetAreNotKept() {
+        final Bitmask bitmask = makeRandomBitmask(100, 100, 2);
+        final RotatedBitmaskCache cache = new RotatedBitmaskCache(bitmask, 8, 0);
+        assertEquals(BitmaskModifier.rotate(bitmask, Math.PI / 4), cache.getRotation(1));
+        assertNotSame(cache.getRotation(1), cache.getRotation(1));
+        assertEquals(1, cache.getCachedStepCount());
+    }
+}
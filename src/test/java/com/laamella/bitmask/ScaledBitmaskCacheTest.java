@@ -0,0 +1,38 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScaledBitmaskCacheTest {
+    @Test
+    void testLevelsAreScaledMasks() {
+        final Bitmask bitmask = makeRandomBitmask(150, 70, 1);
+        final ScaledBitmaskCache cache = new ScaledBitmaskCache(bitmask);
+        assertSame(bitmask, cache.get(0));
+        assertEquals(BitmaskModifier.scale(bitmask, 75, 35), cache.get(1));
+        assertEquals(BitmaskModifier.scale(bitmask, 37, 17), cache.get(2));
+        assertEquals(BitmaskModifier.scale(bitmask, 1, 1), cache.get(10));
+        assertEquals(BitmaskModifier.scale(bitmask, 600, 280), cache.get(-2));
+        assertSame(cache.get(1), cache.get(1));
+        assertTrue(cache.get(1).isFrozen());
+        assertEquals(5, cache.getCachedLevelCount());
+        assertEquals(300, cache.getWidth(-1));
+        assertEquals(17, cache.getHeight(2));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(-9));
+    }
+
+    @Test
+    void testLevelsOverBudgetAreNotKept() {
+        final Bitmask bitmask = makeRandomBitmask(128, 64, 2);
+        // Room for level 1, 64x32, but not for level -1, 256x128.
+        final ScaledBitmaskCache cache = new ScaledBitmaskCache(bitmask, 32 * Long.BYTES);
+        assertEquals(BitmaskModifier.scale(bitmask, 256, 128), cache.get(-1));
+        assertEquals(1, cache.getCachedLevelCount());
+        assertNotSame(cache.get(-1), cache.get(-1));
+        assertEquals(BitmaskModifier.scale(bitmask, 64, 32), cache.get(1));
+        assertSame(cache.get(1), cache.get(1));
+        assertEquals(2, cache.getCachedLevelCount());
+    }
+}
@@ -0,0 +1,44 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShiftedBitmaskCacheTest {
+    private static void assertSameAsSprite(final ShiftedBitmaskCache cache, final Bitmask terrain) {
+        final Bitmask sprite = cache.getSprite();
+        for (int xOffset = -40; xOffset < 220; xOffset += 3) {
+            for (int yOffset = -25; yOffset < 110; yOffset += 4) {
+                final String where = xOffset + "," + yOffset;
+                assertEquals(terrain.overlaps(sprite, xOffset, yOffset), cache.overlaps(terrain, xOffset, yOffset), where);
+                assertEquals(terrain.overlapArea(sprite, xOffset, yOffset), cache.overlapArea(terrain, xOffset, yOffset), where);
+                final long pos = cache.overlapPos(terrain, xOffset, yOffset);
+                assertEquals(terrain.overlapPos(sprite, xOffset, yOffset) == Bitmask.NO_OVERLAP, pos == Bitmask.NO_OVERLAP, where);
+                if (pos != Bitmask.NO_OVERLAP) {
+                    final int x = Bitmask.overlapPosX(pos);
+                    final int y = Bitmask.overlapPosY(pos);
+                    assertTrue(terrain.getBit(x, y) && sprite.getBit(x - xOffset, y - yOffset), where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testShiftedCopiesGiveTheSameResults() {
+        final Bitmask terrain = makeRandomBitmask(200, 100, 1);
+        final ShiftedBitmaskCache cache = new ShiftedBitmaskCache(makeRandomBitmask(30, 20, 2));
+        assertEquals(1, cache.getCachedShiftCount());
+        assertSameAsSprite(cache, terrain);
+        assertEquals(64, cache.getCachedShiftCount());
+    }
+
+    @Test
+    void testBudgetLimitsCopies() {
+        final Bitmask terrain = makeRandomBitmask(200, 100, 3);
+        // Room for three copies of one stripe of 20 rows.
+        final ShiftedBitmaskCache cache = new ShiftedBitmaskCache(makeRandomBitmask(30, 20, 4), 3 * 20 * Long.BYTES);
+        assertSameAsSprite(cache, terrain);
+        assertEquals(4, cache.getCachedShiftCount());
+    }
+}
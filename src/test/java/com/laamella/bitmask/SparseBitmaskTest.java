@@ -0,0 +1,94 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static com.laamella.bitmask.Tools.countOverlappingPixels;
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SparseBitmaskTest {
+    /**
+     * Air on top, solid ground below a bumpy surface, with some noise around
+     * the surface and a straight wall.
+     */
+    private static Bitmask makeWorld(final int width, final int height) {
+        final Bitmask world = new Bitmask(width, height);
+        for (int x = 0; x < width; x++) {
+            final int surface = height / 2 + (int) (40 * Math.sin(x / 30.0));
+            for (int y = surface; y < height; y++) {
+                world.setBit(x, y);
+            }
+        }
+        BitmaskModifier.xor(world, makeRandomBitmask(width, 60, 1), 0, height / 2 - 30);
+        for (int y = 0; y < height / 2; y++) {
+            world.setBit(width / 3, y);
+        }
+        return world;
+    }
+
+    @Test
+    void testConversionRoundTrip() {
+        final Bitmask world = makeWorld(700, 600);
+        final SparseBitmask sparse = SparseBitmask.of(world);
+        assertEquals(700, sparse.getWidth());
+        assertEquals(600, sparse.getHeight());
+        assertEquals(world.countBits(), sparse.countBits());
+        assertEquals(world, sparse.toBitmask());
+        for (int x = 0; x < world.getWidth(); x += 3) {
+            for (int y = 0; y < world.getHeight(); y += 5) {
+                assertEquals(world.getBit(x, y), sparse.getBit(x, y));
+            }
+        }
+    }
+
+    @Test
+    void testConversionFromTiledMask() {
+        final Bitmask world = makeWorld(700, 600);
+        final TiledBitmask tiled = new TiledBitmask(128);
+        tiled.draw(world, -300, -200);
+        for (final int x : new int[]{-300, -299, -237, -1}) {
+            final SparseBitmask sparse = SparseBitmask.of(tiled, x, -200, 650, 600);
+            final Bitmask expected = new Bitmask(650, 600);
+            BitmaskModifier.draw(expected, world, -300 - x, 0);
+            assertEquals(expected, sparse.toBitmask(), "x " + x);
+            assertEquals(expected.countBits(), sparse.countBits());
+        }
+        assertEquals(0, SparseBitmask.of(tiled, 1000, 1000, 100, 100).countBits());
+    }
+
+    @Test
+    void testEmptyMask() {
+        final SparseBitmask sparse = SparseBitmask.of(new Bitmask(1000, 1000));
+        assertEquals(0, sparse.countBits());
+        assertFalse(sparse.overlaps(makeRandomBitmask(50, 50, 2), 100, 100));
+        assertEquals(new Bitmask(1000, 1000), sparse.toBitmask());
+    }
+
+    @Test
+    void testOverlapsLikeDenseMask() {
+        final Bitmask world = makeWorld(300, 600);
+        final SparseBitmask sparse = SparseBitmask.of(world);
+        final Bitmask sprite = makeRandomBitmask(70, 40, 3);
+        for (int xOffset = -75; xOffset < 310; xOffset += 13) {
+            for (int yOffset = -45; yOffset < 610; yOffset += 17) {
+                final int expected = countOverlappingPixels(world, sprite, xOffset, yOffset);
+                assertEquals(expected, sparse.overlapArea(sprite, xOffset, yOffset), xOffset + "," + yOffset);
+                assertEquals(expected > 0, sparse.overlaps(sprite, xOffset, yOffset), xOffset + "," + yOffset);
+            }
+        }
+    }
+
+    @Test
+    void testSerialization() throws IOException, ClassNotFoundException {
+        final SparseBitmask sparse = SparseBitmask.of(makeWorld(200, 300));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sparse);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(sparse.toBitmask(), ((SparseBitmask) in.readObject()).toBitmask());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.laamella.bitmask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.laamella.bitmask.Tools.countOverlappingPixels;
+import static com.laamella.bitmask.Tools.makeRandomBitmask;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TiledBitmaskTest {
+    @Test
+    void testTilesAreAllocatedWhenNeeded() {
+        final TiledBitmask world = new TiledBitmask(64);
+        assertEquals(0, world.getTileCount());
+        assertFalse(world.getBit(-1000, 2000000000));
+        world.clearBit(5, 5);
+        assertEquals(0, world.getTileCount());
+        world.setBit(-1, -1);
+        world.setBit(2000000000, 3);
+        assertEquals(2, world.getTileCount());
+        assertTrue(world.getBit(-1, -1));
+        assertTrue(world.getBit(2000000000, 3));
+        assertTrue(world.getTile(-1, -1).getBit(63, 63));
+        world.clearBit(-1, -1);
+        assertFalse(world.getBit(-1, -1));
+        assertThrows(IllegalArgumentException.class, () -> new TiledBitmask(100));
+    }
+
+    @Test
+    void testDrawEraseAndOverlapAcrossTiles() {
+        final TiledBitmask world = new TiledBitmask(64);
+        // A dense reference mask with (-100,-100) at its origin.
+        final Bitmask reference = new Bitmask(300, 250);
+        final Bitmask terrain = makeRandomBitmask(150, 100, 1);
+        final Bitmask hole = makeRandomBitmask(40, 40, 2);
+        world.draw(terrain, -70, -30);
+        BitmaskModifier.draw(reference, terrain, 30, 70);
+        world.erase(hole, -20, 0);
+        BitmaskModifier.erase(reference, hole, 80, 100);
+        for (int x = -100; x < 200; x++) {
+            for (int y = -100; y < 150; y++) {
+                assertEquals(reference.getBit(x + 100, y + 100), world.getBit(x, y), x + "," + y);
+            }
+        }
+        final Bitmask sprite = makeRandomBitmask(50, 30, 3);
+        for (int x = -140; x < 120; x += 11) {
+            for (int y = -120; y < 100; y += 7) {
+                final int expected = countOverlappingPixels(reference, sprite, x + 100, y + 100);
+                assertEquals(expected, world.overlapArea(sprite, x, y));
+                assertEquals(expected > 0, world.overlaps(sprite, x, y));
+            }
+        }
+    }
+
+    @Test
+    void testDrawOnlyAllocatesTilesUnderSetBits() {
+        final TiledBitmask world = new TiledBitmask(64);
+        final Bitmask sprite = new Bitmask(300, 300);
+        sprite.setBit(10, 10);
+        world.draw(sprite, 0, 0);
+        assertEquals(1, world.getTileCount());
+    }
+
+    @Test
+    void testUnloadAndReload() {
+        final TiledBitmask world = new TiledBitmask(64);
+        world.setBit(10, 10);
+        world.setBit(1000, 10);
+        world.setBit(10, -1000);
+        final List<Bitmask> unloaded = new ArrayList<>();
+        final List<int[]> positions = new ArrayList<>();
+        assertEquals(2, world.unloadTilesOutside(0, 0, 2, 2, (tileX, tileY, tile) -> {
+            unloaded.add(tile);
+            positions.add(new int[]{tileX, tileY});
+        }));
+        assertEquals(1, world.getTileCount());
+        assertFalse(world.getBit(1000, 10));
+        for (int i = 0; i < unloaded.size(); i++) {
+            world.putTile(positions.get(i)[0], positions.get(i)[1], unloaded.get(i));
+        }
+        assertTrue(world.getBit(1000, 10));
+        assertTrue(world.getBit(10, -1000));
+        assertThrows(IllegalArgumentException.class, () -> world.putTile(0, 0, new Bitmask(10, 10)));
+    }
+
+    @Test
+    void testManyTiles() {
+        final TiledBitmask world = new TiledBitmask(64);
+        for (int tileX = -20; tileX < 20; tileX++) {
+            for (int tileY = -20; tileY < 20; tileY++) {
+                world.setBit(tileX * 64 + 1, tileY * 64 + 2);
+            }
+        }
+        assertEquals(1600, world.getTileCount());
+        final List<int[]> unloaded = new ArrayList<>();
+        assertEquals(1600 - 100, world.unloadTilesOutside(-5, -5, 4, 4,
+                (tileX, tileY, tile) -> unloaded.add(new int[]{tileX, tileY})));
+        assertEquals(1500, unloaded.size());
+        assertEquals(100, world.getTileCount());
+        for (int tileX = -20; tileX < 20; tileX++) {
+            for (int tileY = -20; tileY < 20; tileY++) {
+                final boolean kept = tileX >= -5 && tileX <= 4 && tileY >= -5 && tileY <= 4;
+                assertEquals(kept, world.getBit(tileX * 64 + 1, tileY * 64 + 2), tileX + "," + tileY);
+            }
+        }
+        for (final int[] position : unloaded) {
+            assertFalse(position[0] >= -5 && position[0] <= 4 && position[1] >= -5 && position[1] <= 4);
+            world.putTile(position[0], position[1], null);
+        }
+        assertEquals(100, world.getTileCount());
+    }
+}
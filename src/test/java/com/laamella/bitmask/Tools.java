@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Random;
 
 class Tools {
     static String readStringResource(final String resourceName) {
@@ -28,6 +29,36 @@ class Tools {
         return bitMask;
     }
 
+    static Bitmask makeRandomBitmask(final int width, final int height, final long seed) {
+        final Random random = new Random(seed);
+        final Bitmask bitMask = BitmaskFactory.createEmptyBitmask(width, height);
+        for (int x = 0; x < bitMask.getWidth(); x++) {
+            for (int y = 0; y < bitMask.getHeight(); y++) {
+                if (random.nextInt(4) == 0) {
+                    bitMask.setBit(x, y);
+                }
+            }
+        }
+        return bitMask;
+    }
+
+    /**
+     * The slow but obviously correct way to count overlapping pixels.
+     */
+    static int countOverlappingPixels(final Bitmask a, final Bitmask b, final int xOffset, final int yOffset) {
+        int count = 0;
+        for (int x = 0; x < a.getWidth(); x++) {
+            for (int y = 0; y < a.getHeight(); y++) {
+                final int bx = x - xOffset;
+                final int by = y - yOffset;
+                if (bx >= 0 && by >= 0 && bx < b.getWidth() && by < b.getHeight() && a.getBit(x, y) && b.getBit(bx, by)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
     static Bitmask createBitmaskFromResource(final String resourceName) {
         final String string = readStringResource(resourceName);
         return BitmaskFactory.createBitmaskFromAsciiArt(string, 'o');
@@ -37,7 +68,7 @@ class Tools {
         try {
             Field bitsField = Bitmask.class.getDeclaredField("bits");
             bitsField.setAccessible(true);
-            return (long[]) bitsField.get(bitmask);
+            return ((HeapStorage) bitsField.get(bitmask)).words;
         } catch (final NoSuchFieldException | IllegalAccessException e) {
             throw new AssertionFailedError("For some reason, the bits field is inaccessible");
         }